@@ -1,3 +1,3 @@
-javac -d ./build src/com/thefattestcat/GameOfLife/Main.java -cp src/
+javac --add-modules jdk.incubator.vector -d ./build src/com/thefattestcat/GameOfLife/*.java -cp src/
 cd build/
-jar -cfe ../gameOfLife.jar com.thefattestcat.GameOfLife.Main com/thefattestcat/GameOfLife/*.class
\ No newline at end of file
+jar -cfe ../gameOfLife.jar com.thefattestcat.GameOfLife.Main com/thefattestcat/GameOfLife/*.class
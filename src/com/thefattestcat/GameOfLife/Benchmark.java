@@ -0,0 +1,286 @@
+package com.thefattestcat.GameOfLife;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+ * Microbenchmarks of the engine and drawing on fixed workloads. Each case is
+ * warmed up, then timed over a few iterations that each start from the same
+ * state; allocation per operation comes from the thread allocation counter.
+ * Results can be saved as CSV and compared against an earlier run.
+ *
+ * bench [filter] [sizes=128,512,2048,8192] [time=<seconds>] [out=<csv>] [baseline=<csv>]
+ */
+final class Benchmark {
+    static final String[] WORKLOADS = { "empty", "glider", "rpentomino", "acorn", "gosper", "soup:25", "soup:50" };
+    static final String[] KERNEL_RULES = { "B3/S23", "B36/S23", "B3678/S34678", "B2/S" };
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 3;
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private String filter = "";
+    private int[] sizes = { 128, 512, 2048, 8192 };
+    private double iterationSeconds = 1;
+    private String out = null;
+    private final HashMap<String, Double> baseline = new HashMap<>();
+    private final ArrayList<String> results = new ArrayList<>();
+
+    interface Case {
+        /* Builds the state an iteration starts from */
+        void setup();
+
+        void run();
+    }
+
+    private Benchmark() {}
+
+    static void run(String[] args) {
+        Benchmark b = new Benchmark();
+
+        try {
+            for (int i = 1; i < args.length; i++) b.parseArg(args[i]);
+        }
+        catch (IOException | NumberFormatException err) {
+            System.err.printf("Bad benchmark argument: %s\n", err.getMessage());
+            return;
+        }
+
+        b.runAll();
+    }
+
+    private void parseArg(String arg) throws IOException {
+        if (arg.startsWith("sizes=")) {
+            String[] parts = arg.substring(6).split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) sizes[i] = Integer.parseInt(parts[i]);
+        }
+        else if (arg.startsWith("time=")) iterationSeconds = Double.parseDouble(arg.substring(5));
+        else if (arg.startsWith("out=")) out = arg.substring(4);
+        else if (arg.startsWith("baseline=")) readBaseline(arg.substring(9));
+        else filter = arg;
+    }
+
+    private void runAll() {
+        System.out.printf("%-14s %-13s %6s %14s %8s %12s %10s\n", "benchmark", "workload", "size", "ops/s", "error", "B/op", "baseline");
+
+        benchKernel();
+        benchUpdateBuffer();
+
+        for (final int size : sizes) {
+            for (final String w : WORKLOADS) benchStep(w, size);
+        }
+        for (final int size : sizes) {
+            benchRowKernel("scalar", size);
+            benchRowKernel("vector", size);
+        }
+        for (final String w : WORKLOADS) {
+            benchDraw("draw", w, 1024, 1.0);
+            benchDraw("drawZoomedOut", w, 1024, 0.125);
+        }
+        // as far out as the camera goes, the same number of pixels for any size
+        for (final int size : sizes) benchDraw("drawDensity", "soup:50", size, Global.MAX_SCALE);
+
+        if (out != null) writeResults();
+    }
+
+    /* The 64-cell word kernel of each rule on random words, one op is one word */
+    private void benchKernel() {
+        for (final String r : KERNEL_RULES) benchKernel(Rule.parse(r));
+    }
+
+    private void benchKernel(Rule rule) {
+        final long[] words = new long[4096 + 2];
+        final Random random = new Random(1);
+        final long[] sink = new long[1];
+
+        measure("kernel", rule.getName(), 64, new Case() {
+            public void setup() {
+                for (int i = 0; i < words.length; i++) words[i] = random.nextLong();
+            }
+
+            public void run() {
+                long acc = 0;
+                for (int i = 1; i < words.length - 1; i++) {
+                    acc ^= rule.nextWord(words[i - 1], words[i], words[i + 1], words[i + 1], words[i - 1],
+                                         words[i], words[i], words[i + 1], words[i - 1]);
+                }
+                sink[0] = acc;
+            }
+        }, words.length - 2);
+    }
+
+    /* Queueing and resetting the active set, one op is one add */
+    private void benchUpdateBuffer() {
+        final int capacity = 1 << 20;
+        final UpdateBuffer buffer = new UpdateBuffer(capacity);
+        final int[] indices = new int[1 << 16];
+        final Random random = new Random(1);
+
+        measure("updateBuffer", "random", capacity, new Case() {
+            public void setup() {
+                for (int i = 0; i < indices.length; i++) indices[i] = random.nextInt(capacity);
+            }
+
+            public void run() {
+                for (final int i : indices) buffer.add(i);
+                buffer.reset();
+            }
+        }, indices.length);
+    }
+
+    /* One op is CellWorld.step() of the configured engine */
+    private void benchStep(String workload, int size) {
+        final CellWorld[] world = new CellWorld[1];
+
+        measure("step", workload, size, new Case() {
+            public void setup() {
+                world[0] = newWorld(workload, size);
+            }
+
+            public void run() {
+                world[0].step();
+            }
+        }, 1);
+    }
+
+    /* Every row of a 50% soup through the named row kernel, one op is one generation of the whole grid */
+    private void benchRowKernel(String kernel, int size) {
+        if (!("rowKernel," + kernel + "," + size).contains(filter)) return;
+
+        final BitGrid grid = new BitGrid(size, Settings.getRule());
+        final RowKernel rows = RowKernel.of(kernel, grid);
+        if (!kernel.equals("scalar") && rows.getLanes() == 1) return;
+
+        final int wpr = grid.getWordsPerRow();
+        final long[] dst = new long[grid.getWordCount()];
+        final Random random = new Random(1);
+
+        measure("rowKernel", kernel, size, new Case() {
+            public void setup() {
+                for (int y = 0; y < size; y++) {
+                    for (int wx = 0; wx < wpr; wx++) grid.setWord(wx, y, random.nextLong());
+                }
+            }
+
+            public void run() {
+                final long[] src = grid.getWords();
+                for (int y = 0; y < size; y++) rows.step(src, dst, y, 0, wpr);
+            }
+        }, 1);
+    }
+
+    /* One op is one frame of CellWorld.draw into an offscreen image, centred on the pattern */
+    private void benchDraw(String name, String workload, int size, double scale) {
+        final CellWorld world = newWorld(workload, size);
+        final BufferedImage image = new BufferedImage(1024, 720, BufferedImage.TYPE_INT_RGB);
+        final long centre = world.getSize() == 0 ? 0 : size / 2;
+
+        world.publish(true);
+        world.takeSnapshot();
+
+        measure(name, workload, size, new Case() {
+            public void setup() {}
+
+            public void run() {
+                Graphics2D g2d = image.createGraphics();
+                g2d.translate(image.getWidth() / 2, image.getHeight() / 2);
+                g2d.scale(scale, scale);
+
+                int hw = (int) (image.getWidth() / 2 / scale), hh = (int) (image.getHeight() / 2 / scale);
+                world.draw(g2d, DensityPyramid.blockFor(scale), centre, centre, -hw, -hh, hw, hh);
+                g2d.dispose();
+            }
+        }, 1);
+    }
+
+    private static CellWorld newWorld(String workload, int size) {
+        CellWorld world = new CellWorld(CellWorld.createEngine(Settings.getEngine(), size, Settings.getRule()));
+        if (workload.equals("empty")) return world;
+
+        final long centre = workload.startsWith("soup:") ? 0 : size / 2;
+        try {
+            PatternIO.load(workload, size, size, PatternIO.centredOn(world, centre, centre));
+        }
+        catch (IOException err) {
+            throw new IllegalStateException(err);
+        }
+
+        return world;
+    }
+
+    private void measure(String name, String workload, int size, Case c, int opsPerRun) {
+        String key = name + "," + workload + "," + size;
+        if (!key.contains(filter)) return;
+
+        final long thread = Thread.currentThread().getId();
+        final long iterationNanos = (long) (iterationSeconds * 1e9);
+
+        double[] rates = new double[ITERATIONS];
+        long allocated = 0, ops = 0;
+
+        for (int it = -WARMUP_ITERATIONS; it < ITERATIONS; it++) {
+            c.setup();
+
+            long runs = 0;
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime(), elapsed;
+
+            do {
+                c.run();
+                runs++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+
+            if (it < 0) continue;
+
+            allocated += threads.getThreadAllocatedBytes(thread) - bytes;
+            ops += runs * opsPerRun;
+            rates[it] = runs * opsPerRun / (elapsed / 1e9);
+        }
+
+        double mean = 0, variance = 0;
+        for (final double r : rates) mean += r / ITERATIONS;
+        for (final double r : rates) variance += (r - mean) * (r - mean) / Math.max(1, ITERATIONS - 1);
+
+        double bytesPerOp = (double) allocated / ops;
+        Double base = baseline.get(key);
+
+        System.out.printf("%-14s %-13s %6d %14.1f %7.1f%% %12.1f %10s\n", name, workload, size, mean,
+                          100 * Math.sqrt(variance) / mean, bytesPerOp, base == null ? "" : String.format("x%.2f", mean / base));
+
+        results.add(String.format("%s,%.3f,%.3f", key, mean, bytesPerOp));
+    }
+
+    private void readBaseline(String path) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            for (String line; (line = br.readLine()) != null; ) {
+                String[] parts = line.split(",");
+                if (parts.length < 4 || parts[0].equals("benchmark")) continue;
+
+                baseline.put(parts[0] + "," + parts[1] + "," + parts[2], Double.parseDouble(parts[3]));
+            }
+        }
+    }
+
+    private void writeResults() {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(out))) {
+            pw.println("benchmark,workload,size,opsPerSecond,bytesPerOp");
+            for (final String r : results) pw.println(r);
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot write benchmark results `%s`\n", out);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.thefattestcat.GameOfLife;
+
+/*
+ * Square world stored one bit per cell. Every row is `wordsPerRow` longs,
+ * bit i of word w is the cell x = w * 64 + i. Bits past the right border
+ * are always kept zero, so kernels can read whole words without masking.
+ */
+class BitGrid {
+    private final int size;
+    private final int wordsPerRow;
+    private final long lastWordMask;
+    private final Rule rule;
+    private long[] words;
+
+    public BitGrid(int size, Rule rule) {
+        this.size = size;
+        this.rule = rule;
+        wordsPerRow = (size + 63) >>> 6;
+
+        int tail = size & 63;
+        lastWordMask = tail == 0 ? -1L : (1L << tail) - 1;
+
+        words = new long[wordsPerRow * size];
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public int getWordCount() {
+        return words.length;
+    }
+
+    public int indexOf(int x, int y) {
+        return y * wordsPerRow + (x >>> 6);
+    }
+
+    protected long[] getWords() {
+        return words;
+    }
+
+    public boolean get(int x, int y) {
+        return (words[y * wordsPerRow + (x >>> 6)] >>> (x & 63) & 1) != 0;
+    }
+
+    public void set(int x, int y, boolean alive) {
+        int i = y * wordsPerRow + (x >>> 6);
+        long bit = 1L << (x & 63);
+
+        if (alive) words[i] |= bit;
+        else words[i] &= ~bit;
+    }
+
+    public void flip(int x, int y) {
+        words[y * wordsPerRow + (x >>> 6)] ^= 1L << (x & 63);
+    }
+
+    /* Word `wx` of row `y`, zero outside of the world */
+    public long getWord(int wx, int y) {
+        if (y < 0 || y >= size || wx < 0 || wx >= wordsPerRow) return 0;
+        return words[y * wordsPerRow + wx];
+    }
+
+    public void setWord(int wx, int y, long word) {
+        if (wx == wordsPerRow - 1) word &= lastWordMask;
+        words[y * wordsPerRow + wx] = word;
+    }
+
+    /* Next state of the 64 cells of word `wx` in row `y` */
+    public long nextWord(int wx, int y) {
+        return rule.nextWord(
+            getWord(wx - 1, y - 1), getWord(wx, y - 1), getWord(wx + 1, y - 1),
+            getWord(wx - 1, y),     getWord(wx, y),     getWord(wx + 1, y),
+            getWord(wx - 1, y + 1), getWord(wx, y + 1), getWord(wx + 1, y + 1)
+        ) & (wx == wordsPerRow - 1 ? lastWordMask : -1L);
+    }
+
+    public long nextWord(int index) {
+        return nextWord(index % wordsPerRow, index / wordsPerRow);
+    }
+
+    /* Computes words [fromX, toX) of row `y` of `src` into `dst`, both laid out like this grid */
+    void stepWords(long[] src, long[] dst, int y, int fromX, int toX) {
+        final int row = y * wordsPerRow;
+        final int up = y > 0 ? row - wordsPerRow : -1;
+        final int down = y < size - 1 ? row + wordsPerRow : -1;
+
+        long ul = 0, l = 0, dl = 0;
+        if (fromX > 0) {
+            if (up != -1) ul = src[up + fromX - 1];
+            l = src[row + fromX - 1];
+            if (down != -1) dl = src[down + fromX - 1];
+        }
+
+        long u = up != -1 ? src[up + fromX] : 0;
+        long c = src[row + fromX];
+        long d = down != -1 ? src[down + fromX] : 0;
+
+        for (int wx = fromX; wx < toX; wx++) {
+            long ur = 0, r = 0, dr = 0;
+            if (wx + 1 < wordsPerRow) {
+                if (up != -1) ur = src[up + wx + 1];
+                r = src[row + wx + 1];
+                if (down != -1) dr = src[down + wx + 1];
+            }
+
+            long n = rule.nextWord(ul, u, ur, l, c, r, dl, d, dr);
+            if (wx == wordsPerRow - 1) n &= lastWordMask;
+            dst[row + wx] = n;
+
+            ul = u; u = ur;
+            l = c; c = r;
+            dl = d; d = dr;
+        }
+    }
+
+    /* Makes `next` the current generation and returns the previous array for reuse */
+    protected long[] swapWords(long[] next) {
+        long[] prev = words;
+        words = next;
+        return prev;
+    }
+
+    public long population() {
+        long n = 0;
+        for (final long w : words) n += Long.bitCount(w);
+        return n;
+    }
+
+    public boolean getBounds(long[] bounds) {
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        long minY = -1, maxY = -1;
+
+        for (int y = 0; y < size; y++) {
+            for (int wx = 0, i = y * wordsPerRow; wx < wordsPerRow; wx++, i++) {
+                long w = words[i];
+                if (w == 0) continue;
+
+                if (minY == -1) minY = y;
+                maxY = y;
+
+                minX = Math.min(minX, wx * 64L + Long.numberOfTrailingZeros(w));
+                maxX = Math.max(maxX, wx * 64L + 63 - Long.numberOfLeadingZeros(w));
+            }
+        }
+
+        if (minY == -1) return false;
+
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = maxX;
+        bounds[3] = maxY;
+        return true;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(words, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package com.thefattestcat.GameOfLife;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/*
+ * Image with one pixel per visible cell. Cells are written straight into its
+ * int[] raster, 64 at a time from snapshot rows, and the whole image is drawn
+ * with one scaled drawImage, so a frame costs the same for any population.
+ */
+class CellRaster {
+    private BufferedImage image;
+    private int[] pixels;
+    private int stride;
+
+    private int width, height;
+    private long x0, y0;
+
+    /* Fills the raster with cells [x0, x0 + width) x [y0, y0 + height) of `s` */
+    public void fill(WorldSnapshot s, long x0, long y0, int width, int height, int alive, int dead) {
+        begin(x0, y0, width, height);
+
+        for (int j = 0; j < height; j++) {
+            final int p = j * stride;
+            final long y = y0 + j;
+
+            for (int i = 0; i < width; i += 64) {
+                final int n = Math.min(64, width - i);
+                final long row = s.getRow(x0 + i, y);
+
+                if (row == 0) {
+                    Arrays.fill(pixels, p + i, p + i + n, dead);
+                    continue;
+                }
+
+                for (int b = 0; b < n; b++) pixels[p + i + b] = (row >>> b & 1) != 0 ? alive : dead;
+            }
+        }
+    }
+
+    /* Makes the raster [x0, x0 + width) x [y0, y0 + height) and returns its pixels to fill, rows getStride() apart */
+    public int[] begin(long x0, long y0, int width, int height) {
+        ensureCapacity(width, height);
+
+        this.x0 = x0;
+        this.y0 = y0;
+        this.width = width;
+        this.height = height;
+        return pixels;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /* Recolors one cell, ignored outside of the filled area */
+    public void set(long x, long y, int rgb) {
+        x -= x0;
+        y -= y0;
+        if (x < 0 || x >= width || y < 0 || y >= height) return;
+
+        pixels[(int) y * stride + (int) x] = rgb;
+    }
+
+    /* Recolors the cells of `bits` among the 64 from (x, y) to the right */
+    public void paint(long x, long y, long bits, int rgb) {
+        for (; bits != 0; bits &= bits - 1) set(x + Long.numberOfTrailingZeros(bits), y, rgb);
+    }
+
+    /* Draws the filled area with its corner at (px, py) and `cellSize` units per cell */
+    public void draw(Graphics2D g2d, int px, int py, int cellSize) {
+        g2d.drawImage(image, px, py, px + width * cellSize, py + height * cellSize, 0, 0, width, height, null);
+    }
+
+    private void ensureCapacity(int width, int height) {
+        if (image != null && image.getWidth() >= width && image.getHeight() >= height) return;
+
+        int w = Math.max(width, image == null ? 1 : image.getWidth());
+        int h = Math.max(height, image == null ? 1 : image.getHeight());
+
+        image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        stride = w;
+    }
+}
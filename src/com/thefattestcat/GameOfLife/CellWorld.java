@@ -3,15 +3,11 @@ package com.thefattestcat.GameOfLife;
 import java.awt.Point;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.Set;
-
-import javax.swing.Timer;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 enum CellState {
     INACTIVE,
@@ -19,273 +15,707 @@ enum CellState {
 }
 
 
-public class CellWorld implements ActionListener {
+public class CellWorld {
     public static final Color CELL_COLOR = Color.DARK_GRAY;
     public static final Color PLACE_COLOR = new Color(147, 196, 62);
     public static final Color DESTROY_COLOR = new Color(222, 126, 42);
 
-    private final CellState[] cells = new CellState[Settings.getWorldSize() * Settings.getWorldSize()];
-    private UpdateBuffer current = new UpdateBuffer();
-    private UpdateBuffer next = new UpdateBuffer();
+    private final LifeEngine engine;
+    private final SnapshotBuffer<WorldSnapshot> snapshots;
+    private SimulationThread simulation;
+
+    private final EditOverlay edits = new EditOverlay();
+    private final Random random = new Random();
+    private final CellRaster raster = new CellRaster();
+    private final DensityPyramid density = new DensityPyramid();
+    private final Metrics metrics = new Metrics();
+    private final PeriodDetector periods = new PeriodDetector(Settings.getPeriodWindow());
+    private Journal journal;
+    private StatsStream stats;
 
-    private final HashSet<Point> userPoints = new HashSet<>();
+    // cells changed since the renderer last took a snapshot, and edits made or applied since it last looked
+    private final long[] unseenChanges = new long[4];
+    private final long[] editedBox = new long[4];
 
-    private boolean isPaused = true;
+    private volatile boolean isPaused = true;
 
-    private final Timer simulationTimer;
+    private ExecutorService checkpointWriter;
+    private WorldSnapshot checkpointSnapshot;
+    private CompletableFuture<Void> checkpointWrite = CompletableFuture.completedFuture(null);
+    private long checkpointGeneration;
 
 
-    public CellWorld() {
-        simulationTimer = new Timer(Settings.getSimulationTime(), this);
+    /* World of the configured engine and rule, `size` cells across if the engine has a border */
+    public CellWorld(int size) {
+        this(createEngine(Settings.getEngine(), size, Settings.getRule()));
+    }
+
+    CellWorld(LifeEngine engine) {
+        this.engine = engine;
+        checkpointGeneration = engine.getGeneration();
+
+        Util.clearBox(unseenChanges);
+        Util.clearBox(editedBox);
+
+        snapshots = new SnapshotBuffer<>(engine.newSnapshot(), engine.newSnapshot(), engine.newSnapshot());
+        publish(true);
+    }
 
-        for (int i = 0; i < cells.length; i++) {
-            cells[i] = CellState.INACTIVE;
+    /* Engine by its `engine` setting name, `size` is only used by the bordered ones; other than Life-like rules always run on ltl */
+    static LifeEngine createEngine(String name, int size, Rule rule) {
+        if (!rule.isLifeLike()) return new LtlEngine(size, rule);
+
+        switch (name) {
+            case "ltl":
+                return new LtlEngine(size, rule);
+            case "hashlife":
+                return new HashLife(Settings.getHashLifeMemory(), rule);
+            case "chunks":
+                return new ChunkEngine(rule);
+            case "offheap":
+                try {
+                    return new OffHeapEngine(size, rule);
+                }
+                catch (IllegalArgumentException err) {
+                    System.err.printf("Cannot allocate an off-heap world of %d: %s; using chunks\n", size, err.getMessage());
+                    return new ChunkEngine(rule);
+                }
+            default:
+                return new GridEngine(size, rule, Settings.getStepThreads(), Settings.getKernel());
+        }
+    }
+
+    /*
+     * Moves stepping to its own thread, after this the engine must only be
+     * used through the request methods. Worlds run this way keep a history to
+     * rewind, unless the rule has dying states, which the history doesn't hold.
+     */
+    public void start() {
+        if (simulation != null) return;
+
+        final long rewindBytes = Settings.getRewindMemory() * (1L << 20);
+        if (rewindBytes > 0 && engine.getRule().getStates() == 2) {
+            journal = new Journal(rewindBytes);
+            record();
         }
+
+        simulation = new SimulationThread(this);
+        simulation.setRunning(!isPaused);
+        simulation.start();
     }
 
     public void setPaused(boolean p) {
         isPaused = p;
-        if (!p) simulationTimer.start();
-        else simulationTimer.stop();
+        if (simulation != null) simulation.setRunning(!p);
     }
 
     public boolean isPaused() {
         return isPaused;
     }
 
-    public void clear() {
-        current.reset();
-        next.reset();
+    public void requestStep() {
+        submit(this::step);
+    }
 
-        for (int i = 0; i < cells.length; i++) {
-            cells[i] = CellState.INACTIVE;
-        }
+    public void requestJump(int log2) {
+        submit(() -> jump(log2));
+    }
+
+    public void requestClear() {
+        submit(this::clear);
+    }
+
+    public void requestUndo() {
+        submit(this::undo);
+    }
+
+    public void requestRewind(long generations) {
+        submit(() -> rewind(generations));
+    }
+
+    private void submit(Runnable command) {
+        if (simulation == null) command.run();
+        else simulation.submit(command);
+    }
+
+    public void clear() {
+        edited();
+        engine.clear();
     }
 
     public void step() {
+        final long start = metrics.beginStep();
+
         putUserPoints();
-        swap();
+        record();
+        stepEngine();
+        record();
 
-        for (final Entry<Point, CellState> v : current.values()) {
-            if (v.getValue() != null) {
-                Point p = v.getKey();
-                set(p.x, p.y, v.getValue());
+        metrics.endStep(start, engine.getChangedCells(), engine.getDenseFraction());
+        checkPeriod();
+        autoCheckpoint();
+    }
+
+    /* Applies user points and advances 2^log2 generations */
+    public void jump(int log2) {
+        putUserPoints();
+        advance(1L << log2);
+        autoCheckpoint();
+    }
+
+    /*
+     * Moves `generations` ahead. Engines that keep a hash step until the world
+     * repeats itself and then only through the part of the cycle that is left,
+     * others jump by powers of two so HashLife can skip through them. While
+     * stats are on every generation is stepped, so each gets its record.
+     */
+    public void advance(long generations) {
+        metrics.recordGenerations(generations);
+
+        if (!isDetectingPeriods()) {
+            // generations in the stats are stepped one by one, without them HashLife can skip through
+            if (stats != null) {
+                for (long i = 0; i < generations; i++) stepEngine();
+            }
+            else {
+                for (int k = 62; k >= 0; k--) {
+                    if ((generations >>> k & 1) != 0) engine.jump(k);
+                }
             }
+            record();
+            return;
         }
-        for (final Point p : current.points()) {
-            processPoint(p);
+
+        final long target = engine.getGeneration() + generations;
+        while (engine.getGeneration() < target && (periods.getPeriod() == 0 || stats != null)) {
+            stepEngine();
+            record();
+            checkPeriod();
+        }
+
+        if (engine.getGeneration() < target) {
+            for (long i = periods.stepsTo(engine.getGeneration(), target); i > 0; i--) engine.step();
+            engine.setGeneration(target);
+            record();
         }
     }
 
-    private void putUserPoints() {
-        for (final Point p : userPoints) {
-            CellState st = get(p.x, p.y);
+    /* Takes back the last step or edit, edits not applied yet included, as far as the history goes */
+    public void undo() {
+        if (journal == null) return;
+
+        putUserPoints();
+        record();
+        if (journal.back(engine)) rewound();
+    }
+
+    /* Goes `generations` back, or to the oldest generation kept */
+    public void rewind(long generations) {
+        if (journal == null) return;
 
-            if (st == CellState.ACTIVE) st = CellState.INACTIVE;
-            else st = CellState.ACTIVE;
+        putUserPoints();
+        record();
+
+        final long target = engine.getGeneration() - generations;
+        journal.seek(engine, target);
 
-            next.add(p.x, p.y, st);
-            considerNextAround(p.x, p.y);
+        // engines that only get keyframes land before the target and step the rest
+        while (engine.getGeneration() < target) {
+            engine.step();
+            record();
         }
 
-        userPoints.clear();
+        rewound();
     }
 
-    private void processPoint(Point p) {
-        int x = p.x, y = p.y;
-        CellState c = get(x, y);
-        CellState r = processRules(x, y, c);
-
-        if (c != r) {
-            next.add(x, y, r);
-            considerNextAround(x, y);
+    /* Steps the engine once, into the stats when they are on */
+    private void stepEngine() {
+        if (stats == null) {
+            engine.step();
+            return;
         }
+
+        final long start = System.nanoTime();
+        engine.step();
+        stats.add(engine, System.nanoTime() - start);
     }
 
-    public boolean isValidPos(int x, int y) {
-        if (x < 0 || x >= Settings.getWorldSize()) return false;
-        if (y < 0 || y >= Settings.getWorldSize()) return false;
+    private void record() {
+        if (journal == null) return;
 
-        return true;
+        journal.record(engine);
+        metrics.recordHistory(journal.getBytes());
     }
 
-    public CellState get(int x, int y) {
-        if (!isValidPos(x, y)) return null;
-        return cells[x + y * Settings.getWorldSize()];
+    /* The world went back, so did what the period detector knew */
+    private void rewound() {
+        periods.reset();
+        metrics.recordPeriod(0);
+        if (stats != null) stats.resync();
     }
 
-    public void put(int x, int y, CellState state) {
-        if (!isPaused) return;
-        if (state == null) return;
+    private boolean isDetectingPeriods() {
+        return engine.hasHash() && !Settings.getPeriodDetection().equals("off");
+    }
 
-        Point p = new Point(x, y);
-        if (userPoints.contains(p)) userPoints.remove(p);
-        else userPoints.add(p);
+    /* Reports (and pauses on, if set to) the first repeat of an earlier generation */
+    private void checkPeriod() {
+        if (!isDetectingPeriods() || !periods.add(engine.getGeneration(), engine.getHash())) return;
+
+        metrics.recordPeriod(periods.getPeriod());
+        System.err.printf("Generation %d repeats generation %d, period %d\n",
+                          periods.getSince(), periods.getSince() - periods.getPeriod(), periods.getPeriod());
+
+        if (Settings.getPeriodDetection().equals("pause")) setPaused(true);
     }
 
-    public void put(Point p, CellState state) {
-        if (!isPaused) return;
-        if (state == null) return;
+    /* Before cells are set by hand, after which what came before says nothing about what comes next */
+    private void edited() {
+        periods.reset();
+        metrics.recordPeriod(0);
+        if (journal != null) journal.edited(engine);
+        if (stats != null) stats.resync();
+    }
 
-        if (userPoints.contains(p)) userPoints.remove(p);
-        else userPoints.add(p);
+    /* Streams the counters of every generation stepped from now on to `path`, before start() */
+    public void openStats(String path) {
+        try {
+            stats = new StatsStream(path);
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot open stats file `%s`: %s\n", path, err.getMessage());
+        }
     }
 
-    public boolean hasUserPoint(Point p) {
-        return userPoints.contains(p);
+    /* Writes out the stats still queued, returns how many generations went to the file */
+    public long closeStats() {
+        if (stats == null) return 0;
+
+        final long written = stats.close();
+        stats = null;
+        return written;
     }
 
-    public boolean hasUserPoint(int x, int y) {
-        return userPoints.contains(new Point(x, y));
+    /* Completes once the current generation is written to `path` */
+    public CompletableFuture<Void> requestCheckpoint(String path) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        submit(() -> checkpoint(path).thenRun(() -> written.complete(null)));
+        return written;
     }
 
-    private void set(int x, int y, CellState state) {
-        cells[x + y * Settings.getWorldSize()] = state;
+    /*
+     * Copies the current generation and writes it to `path` on the checkpoint
+     * thread, waiting for the previous write first. Only for the thread that steps.
+     */
+    public CompletableFuture<Void> checkpoint(String path) {
+        checkpointWrite.join();
+
+        if (checkpointWriter == null) {
+            checkpointWriter = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+            checkpointSnapshot = engine.newSnapshot();
+        }
+
+        engine.copyTo(checkpointSnapshot);
+        checkpointGeneration = engine.getGeneration();
+
+        final WorldSnapshot s = checkpointSnapshot;
+        final int size = engine.getSize();
+
+        checkpointWrite = CompletableFuture.runAsync(() -> {
+            try {
+                Checkpoint.write(path, s, size, engine.getRule().getName());
+            }
+            catch (IOException err) {
+                System.err.printf("Cannot write checkpoint `%s`: %s\n", path, err.getMessage());
+            }
+        }, checkpointWriter);
+
+        return checkpointWrite;
     }
 
-    protected CellState[] getCells() {
-        return cells;
+    /* Checkpoints every `checkpointInterval` generations, skipping ones that come while the disk is still busy */
+    private void autoCheckpoint() {
+        final int interval = Settings.getCheckpointInterval();
+        final String path = Settings.getCheckpointFile();
+
+        if (interval <= 0 || path.isEmpty()) return;
+        if (engine.getGeneration() - checkpointGeneration < interval || !checkpointWrite.isDone()) return;
+
+        checkpoint(path);
     }
 
-    protected void draw(Graphics2D g2d, int startX, int startY, int endX, int endY) {
-        final int cs = Global.CELL_SIZE;
-        final int ws = Settings.getWorldSize();
-        
-        g2d.setColor(CELL_COLOR);
+    /* Applies the pending edits a row at a time, each row as one xor of the cells it changes; edits outside of the world are dropped */
+    private void putUserPoints() {
+        synchronized (edits) {
+            if (edits.isEmpty()) return;
 
-        int startWorldX = (int) Math.floor( (double) startX / cs );
-        int startWorldY = (int) Math.floor( (double) startY / cs );
-
-        int endWorldX = (int) Math.ceil( (double) endX / cs );
-        int endWorldY = (int) Math.ceil( (double) endY / cs );
-
-        if (startWorldX < 0) startWorldX = 0;
-        if (startWorldY < 0) startWorldY = 0;
-        if (endWorldX > ws) endWorldX = ws;
-        if (endWorldY > ws) endWorldY = ws;
-
-        for (int y = startWorldY; y < endWorldY; y++) {
-            for (int x = startWorldX; x < endWorldX; x++) {
-                int i = x + y * ws;
-                Point p = new Point(x, y);
-
-                if (userPoints.contains(p)) {
-                    if (cells[i] == CellState.ACTIVE) {
-                        g2d.setColor(DESTROY_COLOR);
-                        g2d.fillRect(x * cs, y * cs, cs, cs);
-                        g2d.setColor(CELL_COLOR);
-                    }
-                    else {
-                        g2d.setColor(PLACE_COLOR);
-                        g2d.fillRect(x * cs, y * cs, cs, cs);
-                        g2d.setColor(CELL_COLOR);
-                    }
+            edited();
+            final int ws = engine.getSize();
+
+            edits.forEachRow((x, y, edited, alive) -> {
+                if (ws != 0) {
+                    if (x < 0 || x >= ws || y < 0 || y >= ws) return;
+                    if (ws - x < 64) edited &= (1L << (ws - x)) - 1;
                 }
-                else if (cells[i] == CellState.ACTIVE) {
-                    g2d.fillRect(x * cs, y * cs, cs, cs);
+
+                final long diff = (engine.getRow(x, y) ^ alive) & edited;
+                if (diff != 0) engine.xorRow(x, y, diff);
+            });
+
+            edits.collectBounds(editedBox);
+            edits.clear();
+        }
+    }
+
+    /* Sets a cell right away, only for the thread that steps; cells outside of the world are ignored */
+    public void setCell(long x, long y, boolean alive) {
+        final int ws = engine.getSize();
+        if (ws != 0 && (x < 0 || x >= ws || y < 0 || y >= ws)) return;
+
+        if (engine.get(x, y) != alive) {
+            edited();
+            engine.flip(x, y);
+        }
+    }
+
+    /* Brings a run of cells to life right away, clipped to the world, only for the thread that steps */
+    public void setRun(long x, long y, long length) {
+        final int ws = engine.getSize();
+        if (ws != 0) {
+            if (y < 0 || y >= ws) return;
+            if (x < 0) {
+                length += x;
+                x = 0;
+            }
+            length = Math.min(length, ws - x);
+        }
+
+        if (length > 0) {
+            edited();
+            engine.setRun(x, y, length, true);
+        }
+    }
+
+    public void requestLoad(String path, long x, long y) {
+        submit(() -> {
+            try {
+                load(path, x, y);
+            }
+            catch (IOException err) {
+                System.err.printf("Cannot load pattern `%s`: %s\n", path, err.getMessage());
+            }
+        });
+    }
+
+    public void requestSave(String path) {
+        submit(() -> {
+            try {
+                save(path);
+            }
+            catch (IOException err) {
+                System.err.printf("Cannot save pattern `%s`: %s\n", path, err.getMessage());
+            }
+        });
+    }
+
+    /* Stamps a pattern file centred on (x, y) over the pending edits, its live cells only */
+    public void requestPaste(String path, long x, long y) {
+        submit(() -> {
+            try {
+                paste(path, x, y);
+            }
+            catch (IOException err) {
+                System.err.printf("Cannot paste pattern `%s`: %s\n", path, err.getMessage());
+            }
+        });
+    }
+
+    /* Replaces the world with a pattern file centred on (x, y) */
+    public void load(String path, long x, long y) throws IOException {
+        clear();
+        PatternIO.load(path, 0, 0, PatternIO.centredOn(this, x, y));
+    }
+
+    public void paste(String path, long x, long y) throws IOException {
+        PatternIO.load(path, 0, 0, PatternIO.centredOn(getRule(), x, y, new PatternIO.CellSink() {
+            @Override
+            public void cell(long cx, long cy) {
+                run(cx, cy, 1);
+            }
+
+            @Override
+            public void run(long cx, long cy, long length) {
+                synchronized (edits) {
+                    edits.fill(cx, cy, cx + length - 1, cy, true);
+                    Util.widenBox(editedBox, cx, cy, cx + length - 1, cy);
                 }
             }
+        }));
+    }
+
+    public void save(String path) throws IOException {
+        PatternIO.save(engine, engine.getRule().getName(), path);
+    }
+
+    /* Hands the current generation to the renderer, unless it hasn't taken the previous one yet */
+    protected void publish(boolean force) {
+        final boolean consumed = snapshots.isConsumed();
+        if (!force && !consumed) {
+            metrics.recordSkippedGeneration();
+            return;
         }
+
+        // a forced publish replaces a snapshot the renderer never saw, so its changes carry over
+        if (consumed) Util.clearBox(unseenChanges);
+        engine.collectChanged(unseenChanges);
+
+        WorldSnapshot s = snapshots.back();
+        engine.copyTo(s);
+        System.arraycopy(unseenChanges, 0, s.changed, 0, 4);
+        metrics.recordGeneration(s.generation, s.population);
+
+        snapshots.publish();
+    }
+
+    /* Switches to the latest generation, null when there is none since the last call. Only for the thread that draws */
+    protected WorldSnapshot takeSnapshot() {
+        final WorldSnapshot s = snapshots.take();
+        if (s != null) density.update(s);
+        return s;
+    }
+
+    /* Generation taken last, only for the thread that draws */
+    protected WorldSnapshot getSnapshot() {
+        return snapshots.front();
     }
 
-    private CellState processRules(int x, int y, CellState currentState) {
-        int aliveAmount = 0;
+    /* Widens `box` by the cells edited, or whose edits were applied, since the last call */
+    protected void collectEdits(long[] box) {
+        synchronized (edits) {
+            if (Util.isEmptyBox(editedBox)) return;
 
-        for (int i = x - 1; i <= x + 1; i++)
-            if (get(i, y - 1) == CellState.ACTIVE) aliveAmount++;
+            Util.widenBox(box, editedBox[0], editedBox[1], editedBox[2], editedBox[3]);
+            Util.clearBox(editedBox);
+        }
+    }
 
-        if (get(x - 1, y) == CellState.ACTIVE) aliveAmount++;
-        if (get(x + 1, y) == CellState.ACTIVE) aliveAmount++;
+    public int getSize() {
+        return engine.getSize();
+    }
 
-        for (int i = x - 1; i <= x + 1; i++)
-            if (get(i, y + 1) == CellState.ACTIVE) aliveAmount++;
+    public Rule getRule() {
+        return engine.getRule();
+    }
 
-        if (aliveAmount < 2 || aliveAmount > 3) return CellState.INACTIVE;
+    public long getGeneration() {
+        return engine.getGeneration();
+    }
 
-        if (aliveAmount == 3 && currentState == CellState.INACTIVE) return CellState.ACTIVE;
-        return currentState;
+    public long getPopulation() {
+        return engine.getPopulation();
     }
 
-    private void considerNextAround(int x, int y) {
-        for (int i = x - 1; i <= x + 1; i++)
-            if (get(i, y - 1) != null) next.add(i, y - 1, null);
+    public boolean isValidPos(int x, int y) {
+        final int ws = engine.getSize();
+        if (ws == 0) return true;
 
-        if (get(x - 1, y) != null) next.add(x - 1, y, null);
-        if (get(x + 1, y) != null) next.add(x + 1, y, null);
+        if (x < 0 || x >= ws) return false;
+        if (y < 0 || y >= ws) return false;
 
-        for (int i = x - 1; i <= x + 1; i++)
-            if (get(i, y + 1) != null) next.add(i, y + 1, null);
+        return true;
     }
 
-    private void swap() {
-        UpdateBuffer b = current;
-        current = next;
-        next = b;
-        next.reset();
+    /* State of a cell as last drawn */
+    public CellState get(int x, int y) {
+        if (!isValidPos(x, y)) return null;
+        return getSnapshot().get(x, y) ? CellState.ACTIVE : CellState.INACTIVE;
     }
 
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        step();
+    /* State a cell is drawn with, pending edits included */
+    public CellState getEdited(int x, int y) {
+        final CellState st = get(x, y);
+        if (st == null) return null;
+
+        synchronized (edits) {
+            return edits.get(x, y, st == CellState.ACTIVE) ? CellState.ACTIVE : CellState.INACTIVE;
+        }
     }
-}
 
+    public void put(int x, int y, CellState state) {
+        put(new Point(x, y), state);
+    }
+
+    /*
+     * Edits a cell to `state` with the next step, only while paused and from
+     * the thread that draws. An edit back to the state drawn takes back the
+     * one before.
+     */
+    public void put(Point p, CellState state) {
+        if (!isPaused) return;
+        if (state == null) return;
 
-class UpdateBuffer {
-    private final PointFabric pointFabric = new PointFabric();
-    private final HashSet<Point> updateSet = new HashSet<>();
-    private final HashMap<Point, CellState> valueSet = new HashMap<>();
+        synchronized (edits) {
+            if (get(p.x, p.y) == state) edits.remove(p.x, p.y);
+            else edits.set(p.x, p.y, state == CellState.ACTIVE);
 
-    public void reset() {
-        pointFabric.reset();
-        updateSet.clear();
-        valueSet.clear();
+            Util.widenBox(editedBox, p.x, p.y, p.x, p.y);
+        }
     }
 
-    public void add(int x, int y, CellState state) {
-        Point p = pointFabric.getNext(x, y);
-        updateSet.add(p);
-        
+    /* Edits the cells of a line from `from` to `to` to `state`, so fast strokes leave no gaps */
+    public void stroke(Point from, Point to, CellState state) {
+        if (!isPaused) return;
         if (state == null) return;
 
-        CellState st = valueSet.get(p);
-        if (st == null) {
-            valueSet.put(p, state);
+        synchronized (edits) {
+            edits.line(from.x, from.y, to.x, to.y, state == CellState.ACTIVE);
+            Util.widenBox(editedBox, Math.min(from.x, to.x), Math.min(from.y, to.y), Math.max(from.x, to.x), Math.max(from.y, to.y));
+        }
+    }
+
+    /* Edits every cell of the rectangle with corners `a` and `b` to `state` */
+    public void fill(Point a, Point b, CellState state) {
+        if (!isPaused) return;
+        if (state == null) return;
+
+        synchronized (edits) {
+            edits.fill(Math.min(a.x, b.x), Math.min(a.y, b.y), Math.max(a.x, b.x), Math.max(a.y, b.y), state == CellState.ACTIVE);
+            Util.widenBox(editedBox, Math.min(a.x, b.x), Math.min(a.y, b.y), Math.max(a.x, b.x), Math.max(a.y, b.y));
+        }
+    }
+
+    /* Edits the rectangle with corners `a` and `b` to a random soup with `percent` of its cells alive */
+    public void randomFill(Point a, Point b, int percent) {
+        if (!isPaused) return;
+
+        synchronized (edits) {
+            edits.randomFill(Math.min(a.x, b.x), Math.min(a.y, b.y), Math.max(a.x, b.x), Math.max(a.y, b.y), percent, random);
+            Util.widenBox(editedBox, Math.min(a.x, b.x), Math.min(a.y, b.y), Math.max(a.x, b.x), Math.max(a.y, b.y));
+        }
+    }
+
+    public boolean hasUserPoint(Point p) {
+        return hasUserPoint(p.x, p.y);
+    }
+
+    public boolean hasUserPoint(int x, int y) {
+        synchronized (edits) {
+            return edits.has(x, y);
+        }
+    }
+
+    protected Metrics getMetrics() {
+        return metrics;
+    }
+
+    protected LifeEngine getEngine() {
+        return engine;
+    }
+
+    /*
+     * Draws cells visible in pixels [start, end) measured from the corner of
+     * cell (originX, originY), or with `block` above 1 the density of blocks
+     * that many cells across (see DensityPyramid.blockFor), without the edits
+     */
+    protected void draw(Graphics2D g2d, int block, long originX, long originY, int startX, int startY, int endX, int endY) {
+        if (block > 1) {
+            drawDensity(g2d, block, originX, originY, startX, startY, endX, endY);
             return;
         }
-        if (st == state) return;
 
-        throw new RuntimeException("Contradictory states");
+        // the counts aren't kept up while cells are drawn one by one
+        density.discard();
+
+        if (Settings.getRenderMode().equals("shapes")) drawShapes(g2d, originX, originY, startX, startY, endX, endY);
+        else drawRaster(g2d, originX, originY, startX, startY, endX, endY);
     }
 
-    public Set<Point> points() {
-        return updateSet;
+    /* One pixel per block of `block` x `block` cells into the raster, from the counts of the pyramid */
+    private void drawDensity(Graphics2D g2d, int block, long originX, long originY, int startX, int startY, int endX, int endY) {
+        final int cs = Global.CELL_SIZE;
+
+        long startBlockX = Math.floorDiv(originX + Math.floorDiv(startX, cs), block);
+        long startBlockY = Math.floorDiv(originY + Math.floorDiv(startY, cs), block);
+
+        int width = (int) (Math.floorDiv(originX + Math.floorDiv(endX + cs - 1, cs) + block - 1, block) - startBlockX);
+        int height = (int) (Math.floorDiv(originY + Math.floorDiv(endY + cs - 1, cs) + block - 1, block) - startBlockY);
+        if (width <= 0 || height <= 0) return;
+
+        density.fill(raster, getSnapshot(), block, startBlockX, startBlockY, width, height);
+        raster.draw(g2d, (int) (startBlockX * block - originX) * cs, (int) (startBlockY * block - originY) * cs, cs * block);
     }
 
-    public Set<Entry<Point, CellState>> values() {
-        return valueSet.entrySet();
+    /* One pixel per cell into the raster, edits that change a cell painted over it a row at a time, then a single scaled blit */
+    private void drawRaster(Graphics2D g2d, long originX, long originY, int startX, int startY, int endX, int endY) {
+        final int cs = Global.CELL_SIZE;
+        final WorldSnapshot snapshot = getSnapshot();
+
+        long startWorldX = originX + Math.floorDiv(startX, cs);
+        long startWorldY = originY + Math.floorDiv(startY, cs);
+
+        int width = (int) (originX + Math.floorDiv(endX + cs - 1, cs) - startWorldX);
+        int height = (int) (originY + Math.floorDiv(endY + cs - 1, cs) - startWorldY);
+        if (width <= 0 || height <= 0) return;
+
+        raster.fill(snapshot, startWorldX, startWorldY, width, height, CELL_COLOR.getRGB(), Color.BLACK.getRGB());
+
+        synchronized (edits) {
+            edits.forEachRow(startWorldX, startWorldY, startWorldX + width - 1, startWorldY + height - 1, (x, y, edited, alive) -> {
+                final long drawn = snapshot.getRow(x, y);
+                raster.paint(x, y, edited & alive & ~drawn, PLACE_COLOR.getRGB());
+                raster.paint(x, y, edited & ~alive & drawn, DESTROY_COLOR.getRGB());
+            });
+        }
+
+        raster.draw(g2d, (int) (startWorldX - originX) * cs, (int) (startWorldY - originY) * cs, cs);
     }
-}
 
-class PointFabric {
-    private ArrayList<Point> buffer = new ArrayList<>();
-    private int nextIndex = 0;
+    private void drawShapes(Graphics2D g2d, long originX, long originY, int startX, int startY, int endX, int endY) {
+        final int cs = Global.CELL_SIZE;
+        final int ws = engine.getSize();
+        final WorldSnapshot snapshot = getSnapshot();
+        
+        g2d.setColor(CELL_COLOR);
+
+        long startWorldX = originX + (long) Math.floor( (double) startX / cs );
+        long startWorldY = originY + (long) Math.floor( (double) startY / cs );
 
-    public Point getNext(int x, int y) {
-        Point p;
-        try {
-            p = buffer.get(nextIndex++);
-            p.setLocation(x, y);
-            return p;
+        long endWorldX = originX + (long) Math.ceil( (double) endX / cs );
+        long endWorldY = originY + (long) Math.ceil( (double) endY / cs );
+
+        if (ws != 0) {
+            if (startWorldX < 0) startWorldX = 0;
+            if (startWorldY < 0) startWorldY = 0;
+            if (endWorldX > ws) endWorldX = ws;
+            if (endWorldY > ws) endWorldY = ws;
+        }
+
+        for (long y = startWorldY; y < endWorldY; y++) {
+            for (long x = startWorldX; x < endWorldX; x++) {
+                if (snapshot.get(x, y)) g2d.fillRect((int) (x - originX) * cs, (int) (y - originY) * cs, cs, cs);
+            }
         }
-        catch (IndexOutOfBoundsException err) {
-            p = new Point(x, y);
-            buffer.add(p);
-            return p;
+
+        synchronized (edits) {
+            edits.forEachRow(startWorldX, startWorldY, endWorldX - 1, endWorldY - 1, (x, y, edited, alive) -> {
+                final long drawn = snapshot.getRow(x, y);
+                fillCells(g2d, x - originX, y - originY, edited & alive & ~drawn, PLACE_COLOR);
+                fillCells(g2d, x - originX, y - originY, edited & ~alive & drawn, DESTROY_COLOR);
+            });
         }
     }
 
-    public void reset() {
-        nextIndex = 0;
+    /* Fills the cells of `bits` among the 64 from cell (x, y) of the drawing */
+    private static void fillCells(Graphics2D g2d, long x, long y, long bits, Color color) {
+        final int cs = Global.CELL_SIZE;
+        g2d.setColor(color);
+
+        for (; bits != 0; bits &= bits - 1) {
+            g2d.fillRect((int) (x + Long.numberOfTrailingZeros(bits)) * cs, (int) y * cs, cs, cs);
+        }
     }
-}
\ No newline at end of file
+}
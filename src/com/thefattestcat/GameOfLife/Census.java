@@ -0,0 +1,285 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Counts of the objects settled worlds are left with. A world is cut into
+ * islands of cells within two of each other at any time during a period,
+ * as cells further apart don't share a neighbour; each island then runs on
+ * its own until it looks like it started. Islands are named by apgcode:
+ * xs<population> for still lifes, xp<period> for oscillators and
+ * xq<period> for spaceships, then the shape in extended Wechsler format,
+ * the shortest and first over every rotation, reflection and phase. Islands
+ * that don't come back within MAX_PERIOD generations are zz_<population>.
+ *
+ * Only for one thread, merge() adds up the censuses of several.
+ */
+class Census {
+    static final int MAX_PERIOD = 60;
+
+    private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final Rule rule;
+    private final HashMap<String, Long> counts = new HashMap<>();
+    // names of the shapes seen before, by their Wechsler code as found
+    private final HashMap<String, String> names = new HashMap<>();
+    private long objects = 0;
+
+    Census(Rule rule) {
+        this.rule = rule;
+    }
+
+    /* Adds the objects of `world`, which repeats itself every `period` generations; steps it period - 1 more */
+    void add(LifeEngine world, int period) {
+        final WorldSnapshot s = world.newSnapshot();
+
+        // every cell alive at some point of the period
+        final HashMap<Long, Integer> index = new HashMap<>();
+        long[] cells = null;
+
+        for (int i = 0; i < period; i++) {
+            if (i > 0) world.step();
+
+            cells = cellsOf(world, s);
+            for (final long c : cells) index.putIfAbsent(c, index.size());
+        }
+
+        final int[] parent = new int[index.size()];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+
+        for (final Map.Entry<Long, Integer> e : index.entrySet()) {
+            final int x = x(e.getKey()), y = y(e.getKey());
+
+            for (int dy = -2; dy <= 2; dy++) {
+                for (int dx = -2; dx <= 2; dx++) {
+                    final Integer n = index.get(ChunkMap.key(x + dx, y + dy));
+                    if (n != null) union(parent, e.getValue(), n);
+                }
+            }
+        }
+
+        // the cells alive now, grouped by island
+        final HashMap<Integer, ArrayList<Long>> islands = new HashMap<>();
+        for (final long c : cells) islands.computeIfAbsent(find(parent, index.get(c)), k -> new ArrayList<>()).add(c);
+
+        for (final ArrayList<Long> island : islands.values()) {
+            final long[] shape = new long[island.size()];
+            for (int i = 0; i < shape.length; i++) shape[i] = island.get(i);
+
+            counts.merge(name(shape), 1L, Long::sum);
+            objects++;
+        }
+    }
+
+    void merge(Census other) {
+        for (final Map.Entry<String, Long> e : other.counts.entrySet()) counts.merge(e.getKey(), e.getValue(), Long::sum);
+        objects += other.objects;
+    }
+
+    long getObjects() {
+        return objects;
+    }
+
+    /* Names and counts, most common first */
+    ArrayList<Map.Entry<String, Long>> sorted() {
+        ArrayList<Map.Entry<String, Long>> list = new ArrayList<>(counts.entrySet());
+        list.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+        return list;
+    }
+
+    private String name(long[] cells) {
+        final long[] start = normalize(cells);
+        final String key = wechsler(start);
+
+        String name = names.get(key);
+        if (name == null) {
+            name = classify(cells, start);
+            names.put(key, name);
+        }
+
+        return name;
+    }
+
+    /* Runs `cells` on their own until they come back, `start` is them moved to (0, 0) and sorted */
+    private String classify(long[] cells, long[] start) {
+        final ChunkEngine engine = new ChunkEngine(rule);
+        final WorldSnapshot s = engine.newSnapshot();
+        for (final long c : cells) engine.flip(x(c), y(c));
+
+        final ArrayList<long[]> phases = new ArrayList<>();
+        phases.add(start);
+
+        long[] now = cells;
+        for (int q = 1; q <= MAX_PERIOD; q++) {
+            engine.step();
+            now = cellsOf(engine, s);
+            if (now.length == 0) break;
+
+            final long[] shape = normalize(now);
+            if (Arrays.equals(shape, start)) {
+                final boolean moved = minX(now) != minX(cells) || minY(now) != minY(cells);
+                final String prefix = moved ? "xq" + q : q == 1 ? "xs" + cells.length : "xp" + q;
+
+                return prefix + "_" + canonical(phases);
+            }
+
+            phases.add(shape);
+        }
+
+        return "zz_" + cells.length;
+    }
+
+    /* Shortest, then first, Wechsler code over every phase and symmetry */
+    private static String canonical(ArrayList<long[]> phases) {
+        String best = null;
+
+        for (final long[] phase : phases) {
+            for (int t = 0; t < 8; t++) {
+                final long[] moved = new long[phase.length];
+                for (int i = 0; i < phase.length; i++) {
+                    int x = x(phase[i]), y = y(phase[i]);
+                    if ((t & 1) != 0) x = -x;
+                    if ((t & 2) != 0) y = -y;
+                    moved[i] = (t & 4) != 0 ? ChunkMap.key(y, x) : ChunkMap.key(x, y);
+                }
+
+                final String code = wechsler(normalize(moved));
+                if (best == null || code.length() < best.length() || code.length() == best.length() && code.compareTo(best) < 0) {
+                    best = code;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /*
+     * Extended Wechsler format of cells moved to (0, 0): strips 5 rows high
+     * separated by `z`, a digit in base 32 per column, runs of empty columns
+     * as w (2), x (3) or y and a digit for 4 to 39, trailing ones left out.
+     */
+    private static String wechsler(long[] cells) {
+        int width = 0, height = 0;
+        for (final long c : cells) {
+            width = Math.max(width, x(c) + 1);
+            height = Math.max(height, y(c) + 1);
+        }
+
+        final int strips = (height + 4) / 5;
+        final int[] columns = new int[strips * width];
+        for (final long c : cells) columns[y(c) / 5 * width + x(c)] |= 1 << y(c) % 5;
+
+        final StringBuilder sb = new StringBuilder();
+        for (int strip = 0; strip < strips; strip++) {
+            if (strip > 0) sb.append('z');
+
+            int zeros = 0;
+            for (int x = 0; x < width; x++) {
+                final int v = columns[strip * width + x];
+                if (v == 0) {
+                    zeros++;
+                    continue;
+                }
+
+                while (zeros > 0) {
+                    if (zeros >= 4) {
+                        final int n = Math.min(zeros, 39);
+                        sb.append('y').append(DIGITS.charAt(n - 4));
+                        zeros -= n;
+                    }
+                    else {
+                        sb.append(zeros == 3 ? 'x' : zeros == 2 ? 'w' : '0');
+                        zeros = 0;
+                    }
+                }
+                sb.append(DIGITS.charAt(v));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /* Live cells of `engine` as ChunkMap keys, copied through `s` */
+    private static long[] cellsOf(LifeEngine engine, WorldSnapshot s) {
+        engine.copyTo(s);
+
+        final long[] count = new long[1];
+        final ArrayList<long[]> tiles = new ArrayList<>();
+        try {
+            s.forEachTile((tx, ty, rows) -> {
+                for (final long r : rows) count[0] += Long.bitCount(r);
+                tiles.add(new long[] { tx, ty });
+                tiles.add(rows.clone());
+            });
+        }
+        catch (IOException err) {
+            throw new IllegalStateException(err);
+        }
+
+        final long[] cells = new long[(int) count[0]];
+        int n = 0;
+
+        for (int t = 0; t < tiles.size(); t += 2) {
+            final long tx = tiles.get(t)[0], ty = tiles.get(t)[1];
+            final long[] rows = tiles.get(t + 1);
+
+            for (int i = 0; i < 64; i++) {
+                for (long r = rows[i]; r != 0; r &= r - 1) {
+                    cells[n++] = ChunkMap.key((int) (tx * 64 + Long.numberOfTrailingZeros(r)), (int) (ty * 64 + i));
+                }
+            }
+        }
+
+        return cells;
+    }
+
+    /* Cells moved so the smallest x and y are 0, sorted */
+    private static long[] normalize(long[] cells) {
+        final int x0 = minX(cells), y0 = minY(cells);
+
+        final long[] out = new long[cells.length];
+        for (int i = 0; i < cells.length; i++) out[i] = ChunkMap.key(x(cells[i]) - x0, y(cells[i]) - y0);
+
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static int minX(long[] cells) {
+        int m = Integer.MAX_VALUE;
+        for (final long c : cells) m = Math.min(m, x(c));
+        return m;
+    }
+
+    private static int minY(long[] cells) {
+        int m = Integer.MAX_VALUE;
+        for (final long c : cells) m = Math.min(m, y(c));
+        return m;
+    }
+
+    private static int x(long key) {
+        return (int) key;
+    }
+
+    private static int y(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) parent[a] = b;
+    }
+}
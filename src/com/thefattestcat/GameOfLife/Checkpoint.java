@@ -0,0 +1,236 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary checkpoint of a world, all numbers little endian:
+ *
+ *   int magic, int version, int size (0 without a border), int flags,
+ *   long generation, int tile side (64), int rule length, the rule in ASCII padded to 8 bytes,
+ *   then either every row bit-packed like BitGrid (dense)
+ *   or a long tile count and per non-empty 64x64 tile long tx, long ty, 64 rows (SPARSE).
+ *
+ * Files are read and written through mapped windows, so cells move in bulk
+ * long copies and engines take them a tile at a time.
+ */
+final class Checkpoint {
+    static final int MAGIC = 0x434C4F47; // "GOLC"
+    static final int VERSION = 1;
+    static final int SPARSE = 1;
+    static final int TILE = 64;
+
+    private static final int TILE_BYTES = 16 + TILE * 8;
+
+    private Checkpoint() {}
+
+    /* Writes a snapshot of a world with border `size` (0 for none), replacing `path` only once it's complete */
+    static void write(String path, WorldSnapshot s, int size, String rule) throws IOException {
+        final long[] tiles = new long[1];
+        s.forEachTile((tx, ty, rows) -> tiles[0]++);
+
+        final int wordsPerRow = (size + 63) >>> 6;
+        final long denseBytes = (long) size * wordsPerRow * 8;
+        final boolean dense = s instanceof GridSnapshot && denseBytes <= 8 + tiles[0] * TILE_BYTES;
+
+        final byte[] ruleBytes = rule.getBytes(StandardCharsets.US_ASCII);
+        final long headerBytes = 32 + align8(ruleBytes.length);
+        final long length = headerBytes + (dense ? denseBytes : 8 + tiles[0] * TILE_BYTES);
+
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedWindows out = new MappedWindows(channel, FileChannel.MapMode.READ_WRITE, length);
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(size);
+            out.putInt(dense ? 0 : SPARSE);
+            out.putLong(s.generation);
+            out.putInt(TILE);
+            out.putInt(ruleBytes.length);
+            out.putBytes(ruleBytes, (int) align8(ruleBytes.length));
+
+            if (dense) {
+                long[] words = ((GridSnapshot) s).words;
+                out.putLongs(words, 0, words.length);
+            }
+            else {
+                out.putLong(tiles[0]);
+                s.forEachTile((tx, ty, rows) -> {
+                    out.putLong(tx);
+                    out.putLong(ty);
+                    out.putLongs(rows, 0, TILE);
+                });
+            }
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /* New engine named `engineName` holding a checkpoint, sized like it if it has a border and `size` cells across if not */
+    static LifeEngine load(String path, String engineName, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedWindows in = new MappedWindows(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+
+            if (in.getInt() != MAGIC) throw new IOException("Not a checkpoint");
+            if (in.getInt() != VERSION) throw new IOException("Unsupported checkpoint version");
+
+            int border = in.getInt();
+            int flags = in.getInt();
+            long generation = in.getLong();
+            if (in.getInt() != TILE) throw new IOException("Unsupported checkpoint tile size");
+
+            int ruleLength = in.getInt();
+            if (ruleLength < 0 || ruleLength > 256) throw new IOException("Bad rule in checkpoint");
+            byte[] ruleBytes = new byte[(int) align8(ruleLength)];
+            in.getBytes(ruleBytes);
+
+            Rule rule;
+            try {
+                rule = Rule.parse(new String(ruleBytes, 0, ruleLength, StandardCharsets.US_ASCII));
+            }
+            catch (IllegalArgumentException err) {
+                throw new IOException(err.getMessage());
+            }
+
+            LifeEngine engine = CellWorld.createEngine(engineName, border != 0 ? border : size, rule);
+            engine.setGeneration(generation);
+
+            if ((flags & SPARSE) != 0) readTiles(in, engine);
+            else readRows(in, engine, border);
+
+            return engine;
+        }
+    }
+
+    private static void readTiles(MappedWindows in, LifeEngine engine) throws IOException {
+        final long[] rows = new long[TILE];
+
+        for (long n = in.getLong(); n > 0; n--) {
+            long tx = in.getLong(), ty = in.getLong();
+            in.getLongs(rows, 0, TILE);
+            engine.setTile(tx, ty, rows);
+        }
+    }
+
+    /* Dense rows are read 64 at a time and handed over as tiles */
+    private static void readRows(MappedWindows in, LifeEngine engine, int size) throws IOException {
+        final int wordsPerRow = (size + 63) >>> 6;
+        final long[] band = new long[TILE * wordsPerRow];
+        final long[] rows = new long[TILE];
+
+        for (int ty = 0; ty * TILE < size; ty++) {
+            int height = Math.min(TILE, size - ty * TILE);
+            in.getLongs(band, 0, height * wordsPerRow);
+
+            for (int wx = 0; wx < wordsPerRow; wx++) {
+                long any = 0;
+                for (int i = 0; i < TILE; i++) {
+                    rows[i] = i < height ? band[i * wordsPerRow + wx] : 0;
+                    any |= rows[i];
+                }
+
+                if (any != 0) engine.setTile(wx, ty, rows);
+            }
+        }
+    }
+
+    private static long align8(long n) {
+        return (n + 7) & ~7L;
+    }
+}
+
+/* Sequential access to a file through consecutive mapped windows, so files over 2 GB work too */
+class MappedWindows {
+    private static final long WINDOW = 1 << 26;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final long length;
+
+    private long start = 0;
+    private ByteBuffer window = EMPTY;
+
+    MappedWindows(FileChannel channel, FileChannel.MapMode mode, long length) {
+        this.channel = channel;
+        this.mode = mode;
+        this.length = length;
+    }
+
+    /* Maps the next window once fewer than `bytes` are left in this one */
+    private ByteBuffer window(int bytes) throws IOException {
+        if (window.remaining() >= bytes) return window;
+
+        start += window.position();
+        long size = Math.min(WINDOW, length - start);
+        if (size < bytes) throw new EOFException("Checkpoint is truncated");
+
+        window = channel.map(mode, start, size).order(ByteOrder.LITTLE_ENDIAN);
+        return window;
+    }
+
+    int getInt() throws IOException {
+        return window(4).getInt();
+    }
+
+    long getLong() throws IOException {
+        return window(8).getLong();
+    }
+
+    void putInt(int v) throws IOException {
+        window(4).putInt(v);
+    }
+
+    void putLong(long v) throws IOException {
+        window(8).putLong(v);
+    }
+
+    /* Reads `b.length` bytes, which is a multiple of 8 */
+    void getBytes(byte[] b) throws IOException {
+        for (int i = 0; i < b.length; i += 8) window(8).get(b, i, 8);
+    }
+
+    /* Writes `b` zero padded to `length` bytes, a multiple of 8 */
+    void putBytes(byte[] b, int length) throws IOException {
+        for (int i = 0; i < length; i++) window(1).put(i < b.length ? b[i] : 0);
+    }
+
+    void getLongs(long[] a, int offset, int count) throws IOException {
+        while (count > 0) {
+            ByteBuffer w = window(8);
+            int n = Math.min(count, w.remaining() / 8);
+
+            w.asLongBuffer().get(a, offset, n);
+            w.position(w.position() + n * 8);
+
+            offset += n;
+            count -= n;
+        }
+    }
+
+    void putLongs(long[] a, int offset, int count) throws IOException {
+        while (count > 0) {
+            ByteBuffer w = window(8);
+            int n = Math.min(count, w.remaining() / 8);
+
+            w.asLongBuffer().put(a, offset, n);
+            w.position(w.position() + n * 8);
+
+            offset += n;
+            count -= n;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.thefattestcat.GameOfLife;
+
+/* 64x64 cells of a ChunkEngine and the rows of their next generation */
+class Chunk {
+    final int x, y;
+    long[] cells = new long[ChunkEngine.SIZE];
+    long[] next = new long[ChunkEngine.SIZE];
+
+    boolean changed = false;
+    long scheduled = -1;
+
+    Chunk(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    boolean isEmpty() {
+        for (final long row : cells) {
+            if (row != 0) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,355 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.ArrayList;
+
+/*
+ * World without a border, made of 64x64 chunks (one long per chunk row) kept
+ * in a long-keyed hash map. Chunks are created when cells may be born in them
+ * and removed as soon as they are empty and quiet, so memory follows the live
+ * area. Only chunks next to a chunk that changed are recomputed.
+ */
+class ChunkEngine implements LifeEngine {
+    static final int SHIFT = 6;
+    static final int SIZE = 1 << SHIFT;
+
+    private final Rule rule;
+    private final ChunkMap chunks = new ChunkMap();
+    private ArrayList<Chunk> work = new ArrayList<>();
+    private ArrayList<Chunk> nextWork = new ArrayList<>();
+
+    private long generation = 0;
+    private long changedCells = 0;
+    private long hash = 0;
+    private final long[] changed = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+
+    public ChunkEngine(Rule rule) {
+        this.rule = rule;
+    }
+
+    @Override
+    public int getSize() {
+        return 0;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public boolean get(long x, long y) {
+        Chunk c = chunks.get(chunkX(x), chunkY(y));
+        if (c == null) return false;
+
+        return (c.cells[(int) (y & (SIZE - 1))] >>> (x & (SIZE - 1)) & 1) != 0;
+    }
+
+    @Override
+    public void flip(long x, long y) {
+        int cx = chunkX(x), cy = chunkY(y);
+        Chunk c = chunks.get(cx, cy);
+        if (c == null) c = chunks.put(new Chunk(cx, cy));
+
+        int i = (int) (y & (SIZE - 1));
+        long old = c.cells[i];
+        c.cells[i] ^= 1L << (x & (SIZE - 1));
+
+        rehash(c, i, old);
+        scheduleAround(c);
+        markChanged(c);
+    }
+
+    @Override
+    public void setTile(long tx, long ty, long[] rows) {
+        if (tx != (int) tx || ty != (int) ty) return;
+
+        Chunk c = chunks.get((int) tx, (int) ty);
+        if (c == null) c = chunks.put(new Chunk((int) tx, (int) ty));
+
+        for (int i = 0; i < SIZE; i++) {
+            long old = c.cells[i];
+            c.cells[i] = rows[i];
+            rehash(c, i, old);
+        }
+
+        scheduleAround(c);
+        markChanged(c);
+    }
+
+    @Override
+    public long getRow(long x, long y) {
+        Chunk c = chunks.get(chunkX(x), chunkY(y));
+        return c == null ? 0 : c.cells[(int) (y & (SIZE - 1))];
+    }
+
+    @Override
+    public void xorRow(long x, long y, long mask) {
+        int cx = chunkX(x), cy = chunkY(y);
+        Chunk c = chunks.get(cx, cy);
+        if (c == null) c = chunks.put(new Chunk(cx, cy));
+
+        int i = (int) (y & (SIZE - 1));
+        long old = c.cells[i];
+        c.cells[i] ^= mask;
+
+        rehash(c, i, old);
+        scheduleAround(c);
+        markChanged(c);
+    }
+
+    @Override
+    public void step() {
+        ArrayList<Chunk> w = work;
+        work = nextWork;
+        nextWork = w;
+        nextWork.clear();
+
+        generation++;
+        changedCells = 0;
+
+        for (final Chunk c : work) computeNext(c);
+
+        for (final Chunk c : work) {
+            long[] t = c.cells;
+            c.cells = c.next;
+            c.next = t;
+
+            long n = 0;
+            for (int i = 0; i < SIZE; i++) {
+                if (c.cells[i] == c.next[i]) continue;
+
+                n += Long.bitCount(c.cells[i] ^ c.next[i]);
+                rehash(c, i, c.next[i]);
+            }
+
+            c.changed = n != 0;
+            changedCells += n;
+        }
+
+        for (final Chunk c : work) {
+            if (!c.changed) continue;
+
+            scheduleAround(c);
+            markChanged(c);
+        }
+
+        for (final Chunk c : work) {
+            if (c.scheduled != generation + 1 && c.isEmpty()) chunks.remove(c.x, c.y);
+        }
+    }
+
+    /* Stepped chunks keep the generation before in `next` until the following step */
+    @Override
+    public boolean forEachChange(ChangeVisitor v) {
+        for (final Chunk c : work) {
+            if (!c.changed) continue;
+
+            long x0 = (long) c.x << SHIFT, y0 = (long) c.y << SHIFT;
+            for (int i = 0; i < SIZE; i++) {
+                long diff = c.cells[i] ^ c.next[i];
+                if (diff != 0) v.change(x0, y0 + i, diff);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean hasHash() {
+        return true;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    @Override
+    public void jump(int log2) {
+        for (long i = 1L << log2; i > 0; i--) step();
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        work.clear();
+        nextWork.clear();
+        generation = 0;
+        hash = 0;
+        Util.widenBox(changed, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public long getPopulation() {
+        long n = 0;
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.at(i);
+            if (c == null) continue;
+
+            for (final long row : c.cells) n += Long.bitCount(row);
+        }
+
+        return n;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        // chunks queued for the next step are tagged with it
+        for (final Chunk c : nextWork) c.scheduled = generation + 1;
+        this.generation = generation;
+    }
+
+    @Override
+    public boolean getBounds(long[] bounds) {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.at(i);
+            if (c == null) continue;
+
+            long x0 = (long) c.x << SHIFT, y0 = (long) c.y << SHIFT;
+            for (int y = 0; y < SIZE; y++) {
+                long row = c.cells[y];
+                if (row == 0) continue;
+
+                minY = Math.min(minY, y0 + y);
+                maxY = Math.max(maxY, y0 + y);
+                minX = Math.min(minX, x0 + Long.numberOfTrailingZeros(row));
+                maxX = Math.max(maxX, x0 + 63 - Long.numberOfLeadingZeros(row));
+            }
+        }
+
+        if (minY == Long.MAX_VALUE) return false;
+
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = maxX;
+        bounds[3] = maxY;
+        return true;
+    }
+
+    @Override
+    public WorldSnapshot newSnapshot() {
+        return new ChunkSnapshot();
+    }
+
+    @Override
+    public void copyTo(WorldSnapshot s) {
+        ChunkMap copy = ((ChunkSnapshot) s).chunks;
+
+        // drop the copies of chunks that died since the last one, the rest get overwritten
+        for (int i = 0; i < copy.capacity(); i++) {
+            Chunk cc = copy.at(i);
+            if (cc == null) continue;
+
+            Chunk c = chunks.get(cc.x, cc.y);
+            if (c != null && !c.isEmpty()) continue;
+
+            copy.remove(cc.x, cc.y);
+            i--; // the rest of its cluster shifted back into this slot
+        }
+
+        long n = 0;
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.at(i);
+            if (c == null || c.isEmpty()) continue;
+
+            Chunk cc = copy.get(c.x, c.y);
+            if (cc == null) cc = copy.put(new Chunk(c.x, c.y));
+            System.arraycopy(c.cells, 0, cc.cells, 0, SIZE);
+            for (final long row : c.cells) n += Long.bitCount(row);
+        }
+
+        s.generation = generation;
+        s.population = n;
+    }
+
+    @Override
+    public void collectChanged(long[] box) {
+        if (Util.isEmptyBox(changed)) return;
+
+        Util.widenBox(box, changed[0], changed[1], changed[2], changed[3]);
+        Util.clearBox(changed);
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    static int chunkX(long x) {
+        return (int) (x >> SHIFT);
+    }
+
+    static int chunkY(long y) {
+        return (int) (y >> SHIFT);
+    }
+
+    /* Folds row `i` of `c`, which was `old`, into the hash */
+    private void rehash(Chunk c, int i, long old) {
+        long p = ((long) c.x << 32 ^ c.y & 0xFFFFFFFFL) * SIZE + i;
+        hash ^= Util.zobrist(p, old) ^ Util.zobrist(p, c.cells[i]);
+    }
+
+    private void markChanged(Chunk c) {
+        long x0 = (long) c.x << SHIFT, y0 = (long) c.y << SHIFT;
+        Util.widenBox(changed, x0, y0, x0 + SIZE - 1, y0 + SIZE - 1);
+    }
+
+    /* Queues `c` and its neighbours for the next step, creating missing ones next to live edges */
+    private void scheduleAround(Chunk c) {
+        long columns = 0;
+        for (final long row : c.cells) columns |= row;
+
+        boolean west = (columns & 1L) != 0, east = (columns & Long.MIN_VALUE) != 0;
+        boolean north = c.cells[0] != 0, south = c.cells[SIZE - 1] != 0;
+
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                Chunk n = chunks.get(c.x + dx, c.y + dy);
+                if (n == null) {
+                    boolean live = (dx == 0 || (dx < 0 ? west : east)) && (dy == 0 || (dy < 0 ? north : south));
+                    if (!live) continue;
+
+                    n = chunks.put(new Chunk(c.x + dx, c.y + dy));
+                }
+
+                if (n.scheduled != generation + 1) {
+                    n.scheduled = generation + 1;
+                    nextWork.add(n);
+                }
+            }
+        }
+    }
+
+    private void computeNext(Chunk c) {
+        Chunk nw = chunks.get(c.x - 1, c.y - 1), n = chunks.get(c.x, c.y - 1), ne = chunks.get(c.x + 1, c.y - 1);
+        Chunk w = chunks.get(c.x - 1, c.y), e = chunks.get(c.x + 1, c.y);
+        Chunk sw = chunks.get(c.x - 1, c.y + 1), s = chunks.get(c.x, c.y + 1), se = chunks.get(c.x + 1, c.y + 1);
+
+        for (int y = 0; y < SIZE; y++) {
+            c.next[y] = rule.nextWord(
+                row(w, nw, sw, y - 1), row(c, n, s, y - 1), row(e, ne, se, y - 1),
+                row(w, nw, sw, y),     c.cells[y],          row(e, ne, se, y),
+                row(w, nw, sw, y + 1), row(c, n, s, y + 1), row(e, ne, se, y + 1)
+            );
+        }
+    }
+
+    /* Row `y` of the column of chunks `c`, reaching into the chunk above or below */
+    private static long row(Chunk c, Chunk above, Chunk below, int y) {
+        if (y < 0) return above == null ? 0 : above.cells[SIZE - 1];
+        if (y >= SIZE) return below == null ? 0 : below.cells[0];
+        return c == null ? 0 : c.cells[y];
+    }
+}
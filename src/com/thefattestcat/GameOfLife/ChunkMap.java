@@ -0,0 +1,105 @@
+package com.thefattestcat.GameOfLife;
+
+/* Open addressing map from packed chunk coordinates to chunks */
+class ChunkMap {
+    private long[] keys = new long[256];
+    private Chunk[] values = new Chunk[256];
+    private int size = 0;
+
+    static long key(int x, int y) {
+        return (long) y << 32 | (x & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /* Chunk in slot `i`, null for a free slot */
+    public Chunk at(int i) {
+        return values[i];
+    }
+
+    public Chunk get(int x, int y) {
+        long k = key(x, y);
+        int mask = values.length - 1;
+
+        for (int i = slot(k, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == k) return values[i];
+        }
+
+        return null;
+    }
+
+    public Chunk put(Chunk c) {
+        if ((size + 1) * 2 > values.length) resize(values.length * 2);
+
+        long k = key(c.x, c.y);
+        int mask = values.length - 1;
+        int i = slot(k, mask);
+
+        while (values[i] != null) {
+            if (keys[i] == k) {
+                values[i] = c;
+                return c;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = k;
+        values[i] = c;
+        size++;
+        return c;
+    }
+
+    public void remove(int x, int y) {
+        long k = key(x, y);
+        int mask = values.length - 1;
+        int i = slot(k, mask);
+
+        while (values[i] != null && keys[i] != k) i = (i + 1) & mask;
+        if (values[i] == null) return;
+
+        values[i] = null;
+        size--;
+
+        // shift the rest of the cluster back so lookups don't stop at the hole
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (between) continue;
+
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+        }
+    }
+
+    public void clear() {
+        keys = new long[256];
+        values = new Chunk[256];
+        size = 0;
+    }
+
+    private void resize(int length) {
+        long[] oldKeys = keys;
+        Chunk[] oldValues = values;
+
+        keys = new long[length];
+        values = new Chunk[length];
+        size = 0;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) put(oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+
+/* Copy of the non-empty chunks of a world */
+class ChunkSnapshot extends WorldSnapshot {
+    final ChunkMap chunks = new ChunkMap();
+
+    @Override
+    boolean get(long x, long y) {
+        Chunk c = chunks.get(ChunkEngine.chunkX(x), ChunkEngine.chunkY(y));
+        if (c == null) return false;
+
+        return (c.cells[(int) (y & (ChunkEngine.SIZE - 1))] >>> (x & (ChunkEngine.SIZE - 1)) & 1) != 0;
+    }
+
+    @Override
+    long getRow(long x, long y) {
+        final int cx = ChunkEngine.chunkX(x), cy = ChunkEngine.chunkY(y);
+        final int r = (int) (y & (ChunkEngine.SIZE - 1));
+        final int bit = (int) (x & (ChunkEngine.SIZE - 1));
+
+        Chunk c = chunks.get(cx, cy);
+        long lo = c == null ? 0 : c.cells[r];
+        if (bit == 0) return lo;
+
+        Chunk e = chunks.get(cx + 1, cy);
+        long hi = e == null ? 0 : e.cells[r];
+        return lo >>> bit | hi << (64 - bit);
+    }
+
+    @Override
+    void forEachTile(TileVisitor v) throws IOException {
+        for (int i = 0; i < chunks.capacity(); i++) {
+            Chunk c = chunks.at(i);
+            if (c != null) v.tile(c.x, c.y, c.cells);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.thefattestcat.GameOfLife;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Frames of the stream from SimulationServer to viewers: a little endian int
+ * of the length of the rest, a type byte, then for HELLO a version, the size
+ * of the world and its rule's name, for KEYFRAME and DELTA the generation and
+ * rows as RowEncoder writes them, a keyframe's from an empty world.
+ */
+final class DeltaFrame {
+    static final byte HELLO = 1;
+    static final byte KEYFRAME = 2;
+    static final byte DELTA = 3;
+    static final int VERSION = 1;
+    static final int DEFAULT_PORT = 7341;
+
+    private final byte[] bytes;
+    private int at;
+
+    /* Reads the frame in `bytes` from `at`, past its length */
+    DeltaFrame(byte[] bytes, int at) {
+        this.bytes = bytes;
+        this.at = at + 1;
+    }
+
+    static byte typeOf(byte[] frame) {
+        return frame[4];
+    }
+
+    static byte[] hello(int size, String rule) {
+        final byte[] name = rule.getBytes(StandardCharsets.US_ASCII);
+
+        final RowEncoder head = new RowEncoder();
+        head.putVarint(VERSION);
+        head.putVarint(size);
+        head.putVarint(name.length);
+        return wrap(HELLO, head, name, name.length);
+    }
+
+    static byte[] frame(byte type, long generation, RowEncoder rows) {
+        final RowEncoder head = new RowEncoder();
+        head.putVarint(generation);
+        return wrap(type, head, rows.bytes, rows.length);
+    }
+
+    private static byte[] wrap(byte type, RowEncoder head, byte[] rest, int restLength) {
+        final int length = 1 + head.length + restLength;
+        final byte[] frame = new byte[4 + length];
+        for (int s = 0; s < 32; s += 8) frame[s / 8] = (byte) (length >>> s);
+
+        frame[4] = type;
+        System.arraycopy(head.bytes, 0, frame, 5, head.length);
+        System.arraycopy(rest, 0, frame, 5 + head.length, restLength);
+        return frame;
+    }
+
+    String readName() {
+        final int n = (int) readVarint();
+        final String name = new String(bytes, at, n, StandardCharsets.US_ASCII);
+        at += n;
+        return name;
+    }
+
+    long readVarint() {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = bytes[at++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    /* Visits the rows from here to the end of the frame */
+    void forEachRow(LifeEngine.ChangeVisitor visitor) {
+        final int end = 4 + length();
+        long x = 0, y = 0;
+
+        while (at < end) {
+            final long dy = readVarint(), dx = readVarint();
+            y += dy >>> 1 ^ -(dy & 1);
+            x += (dx >>> 1 ^ -(dx & 1)) << 6;
+
+            final int shift = bytes[at++];
+            if (shift != RowEncoder.RAW) visitor.change(x, y, (readVarint() << 1 | 1) << shift);
+            else {
+                long mask = 0;
+                for (int i = 0; i < 64; i += 8) mask |= (bytes[at++] & 0xFFL) << i;
+                visitor.change(x, y, mask);
+            }
+        }
+    }
+
+    private int length() {
+        int v = 0;
+        for (int s = 0; s < 32; s += 8) v |= (bytes[s / 8] & 0xFF) << s;
+        return v;
+    }
+}
@@ -0,0 +1,259 @@
+package com.thefattestcat.GameOfLife;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Live cell counts of the blocks of 4x4, 16x16 and 64x64 cells of a world,
+ * for drawing it zoomed out as one pixel of density per block, so a frame
+ * costs what its pixels do whatever the size of the world. Counts are kept
+ * per 64x64 tile, for the tiles that ever had cells; each snapshot the
+ * renderer takes recounts the tiles inside its changed box, or the whole
+ * world from its live tiles when that box is larger than what lives.
+ *
+ * Only for the thread that draws.
+ */
+class DensityPyramid {
+    // tiles looked at for a changed box before counting the world again from its live tiles is cheaper
+    private static final long MIN_RECOUNT_TILES = 1024;
+    private static final long NIBBLES = 0x5555555555555555L, PAIRS = 0x3333333333333333L, BYTES = 0x0F0F0F0F0F0F0F0FL;
+
+    private long[] keys = new long[256];
+    private Tile[] tiles = new Tile[256];
+    // counts of the whole tiles by slot, beside the keys so the coarsest level doesn't touch the tiles
+    private int[] totals = new int[256];
+    private int size = 0;
+    private boolean built = false;
+    // tiles kept, pixels outside of them are empty without looking
+    private final long[] bounds = new long[4];
+
+    // colors of a block by its count, one palette per block size
+    private final int[] shades4 = shades(4), shades16 = shades(16), shades64 = shades(64);
+
+    DensityPyramid() {
+        Util.clearBox(bounds);
+    }
+
+    /* Side of the blocks drawn at `scale`, 1 while a cell still takes a pixel or more than a quarter of one */
+    static int blockFor(double scale) {
+        final double cellsPerPixel = 1 / (scale * Global.CELL_SIZE);
+
+        if (cellsPerPixel >= 64) return 64;
+        if (cellsPerPixel >= 16) return 16;
+        if (cellsPerPixel >= 4) return 4;
+        return 1;
+    }
+
+    /* Brings the counts to `s`, a snapshot just taken; nothing until the first fill() */
+    void update(WorldSnapshot s) {
+        if (!built || Util.isEmptyBox(s.changed)) return;
+
+        // clamp before dividing, boxes may reach to infinity
+        final long[] box = s.changed;
+        final long tx0 = Math.floorDiv(Math.max(box[0], Integer.MIN_VALUE), 64), tx1 = Math.floorDiv(Math.min(box[2], Integer.MAX_VALUE), 64);
+        final long ty0 = Math.floorDiv(Math.max(box[1], Integer.MIN_VALUE), 64), ty1 = Math.floorDiv(Math.min(box[3], Integer.MAX_VALUE), 64);
+
+        final double area = (double) (tx1 - tx0 + 1) * (ty1 - ty0 + 1);
+        if (area > Math.max(MIN_RECOUNT_TILES, 4L * size)) {
+            build(s);
+            return;
+        }
+
+        final long[] rows = new long[64];
+        for (long ty = ty0; ty <= ty1; ty++) {
+            for (long tx = tx0; tx <= tx1; tx++) {
+                long any = 0;
+                for (int i = 0; i < 64; i++) any |= rows[i] = s.getRow(tx * 64, ty * 64 + i);
+
+                int slot = find(tx, ty);
+                if (slot < 0) {
+                    if (any == 0) continue;
+                    slot = put(tx, ty);
+                }
+                totals[slot] = tiles[slot].count(rows);
+            }
+        }
+    }
+
+    /* Stops keeping counts, the next fill() starts over from its snapshot */
+    void discard() {
+        if (!built) return;
+
+        keys = new long[256];
+        tiles = new Tile[256];
+        totals = new int[256];
+        size = 0;
+        built = false;
+        Util.clearBox(bounds);
+    }
+
+    /*
+     * Fills `raster` with a pixel per `block` x `block` cells, for the blocks
+     * [bx0, bx0 + width) x [by0, by0 + height), shaded by how many live;
+     * counts the world in `s` first if they aren't kept yet.
+     */
+    void fill(CellRaster raster, WorldSnapshot s, int block, long bx0, long by0, int width, int height) {
+        if (!built) build(s);
+
+        final int[] shades = block == 4 ? shades4 : block == 16 ? shades16 : shades64;
+        final int perTile = 64 / block, shift = Integer.numberOfTrailingZeros(perTile);
+        final int[] pixels = raster.begin(bx0, by0, width, height);
+        final int stride = raster.getStride();
+
+        for (int j = 0; j < height; j++) {
+            final long by = by0 + j;
+            final long ty = by >> shift;
+            final int row = (int) (by & (perTile - 1)) * perTile;
+
+            final boolean kept = !Util.isEmptyBox(bounds) && ty >= bounds[1] && ty <= bounds[3];
+            final int from = kept ? (int) Math.max(0, Math.min(width, (bounds[0] << shift) - bx0)) : width;
+            final int to = kept ? (int) Math.max(from, Math.min(width, (bounds[2] + 1 << shift) - bx0)) : width;
+
+            Arrays.fill(pixels, j * stride, j * stride + from, shades[0]);
+            Arrays.fill(pixels, j * stride + to, j * stride + width, shades[0]);
+
+            if (block == 64) {
+                for (int i = from; i < to; i++) {
+                    final int slot = find(bx0 + i, ty);
+                    pixels[j * stride + i] = shades[slot < 0 ? 0 : totals[slot]];
+                }
+                continue;
+            }
+
+            Tile t = null;
+            long tx = Long.MIN_VALUE;
+
+            for (int i = from; i < to; i++) {
+                final long bx = bx0 + i;
+                if (bx >> shift != tx) {
+                    tx = bx >> shift;
+                    final int slot = find(tx, ty);
+                    t = slot < 0 ? null : tiles[slot];
+                }
+
+                if (t == null) pixels[j * stride + i] = shades[0];
+                else {
+                    final int k = row + (int) (bx & (perTile - 1));
+                    pixels[j * stride + i] = shades[block == 4 ? t.blocks4[k] : t.blocks16[k]];
+                }
+            }
+        }
+    }
+
+    private void build(WorldSnapshot s) {
+        discard();
+        built = true;
+
+        try {
+            s.forEachTile((tx, ty, rows) -> {
+                final int slot = put(tx, ty);
+                totals[slot] = tiles[slot].count(rows);
+            });
+        }
+        catch (IOException err) {
+            throw new IllegalStateException(err);
+        }
+    }
+
+    /* Black for an empty block, then from the cell color for a lone cell to light gray for a full block */
+    private static int[] shades(int block) {
+        final int n = block * block;
+        final int[] shades = new int[n + 1];
+        final Color lo = CellWorld.CELL_COLOR, hi = Color.LIGHT_GRAY;
+
+        shades[0] = Color.BLACK.getRGB();
+        for (int c = 1; c <= n; c++) {
+            // square root, so a few cells in a large block still show
+            final double f = Math.sqrt((c - 1) / (double) Math.max(1, n - 1));
+            shades[c] = new Color((int) (lo.getRed() + (hi.getRed() - lo.getRed()) * f),
+                                  (int) (lo.getGreen() + (hi.getGreen() - lo.getGreen()) * f),
+                                  (int) (lo.getBlue() + (hi.getBlue() - lo.getBlue()) * f)).getRGB();
+        }
+
+        return shades;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+
+    /* Slot of tile (tx, ty), -1 if there is none */
+    private int find(long tx, long ty) {
+        final long k = ChunkMap.key((int) tx, (int) ty);
+        final int mask = tiles.length - 1;
+
+        for (int i = slot(k, mask); tiles[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == k) return i;
+        }
+
+        return -1;
+    }
+
+    /* Slot of tile (tx, ty), added empty if there is none */
+    private int put(long tx, long ty) {
+        final int found = find(tx, ty);
+        if (found >= 0) return found;
+
+        if ((size + 1) * 2 > tiles.length) {
+            final long[] oldKeys = keys;
+            final Tile[] old = tiles;
+            final int[] oldTotals = totals;
+            keys = new long[old.length * 2];
+            tiles = new Tile[old.length * 2];
+            totals = new int[old.length * 2];
+
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] != null) totals[insert(oldKeys[i], old[i])] = oldTotals[i];
+            }
+        }
+
+        Util.widenBox(bounds, tx, ty, tx, ty);
+        size++;
+        return insert(ChunkMap.key((int) tx, (int) ty), new Tile());
+    }
+
+    private int insert(long k, Tile t) {
+        final int mask = tiles.length - 1;
+        int i = slot(k, mask);
+        while (tiles[i] != null) i = (i + 1) & mask;
+
+        keys[i] = k;
+        tiles[i] = t;
+        return i;
+    }
+
+    /* Counts of one 64x64 tile: 16x16 blocks of 4x4 cells and 4x4 blocks of 16x16, the whole is kept in `totals` */
+    private static final class Tile {
+        final byte[] blocks4 = new byte[256];
+        final short[] blocks16 = new short[16];
+
+        /* Counts `rows` and returns how many live in all */
+        int count(long[] rows) {
+            Arrays.fill(blocks16, (short) 0);
+            int total = 0;
+
+            for (int band = 0; band < 16; band++) {
+                // cells per 4-cell nibble of each row, then summed over the band's 4 rows in byte lanes, even and odd nibbles apart
+                long even = 0, odd = 0;
+                for (int i = band * 4; i < band * 4 + 4; i++) {
+                    long v = rows[i] - (rows[i] >>> 1 & NIBBLES);
+                    v = (v & PAIRS) + (v >>> 2 & PAIRS);
+                    even += v & BYTES;
+                    odd += v >>> 4 & BYTES;
+                }
+
+                for (int k = 0; k < 8; k++) {
+                    final int a = (int) (even >>> 8 * k & 0xFF), b = (int) (odd >>> 8 * k & 0xFF);
+                    blocks4[band * 16 + 2 * k] = (byte) a;
+                    blocks4[band * 16 + 2 * k + 1] = (byte) b;
+                    blocks16[band / 4 * 4 + k / 2] += a + b;
+                    total += a + b;
+                }
+            }
+
+            return total;
+        }
+    }
+}
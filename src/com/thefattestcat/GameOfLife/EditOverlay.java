@@ -0,0 +1,169 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+ * Edits waiting to be applied to a world, two bits per cell in sparse 64x64
+ * tiles: whether the cell was edited, and the state it is to get. Bulk edits
+ * write whole 64-cell rows, and the world takes them a row at a time as well,
+ * so filling a million cells costs some sixteen thousand row writes rather
+ * than a million set inserts. Edits of a cell replace the ones before.
+ *
+ * Not thread safe, CellWorld guards it.
+ */
+class EditOverlay {
+    interface RowVisitor {
+        void row(long x, long y, long edited, long alive);
+    }
+
+    // 64 rows of edited bits followed by 64 rows of states, per tile
+    private final HashMap<Long, long[]> tiles = new HashMap<>();
+    private final long[] bounds = new long[4];
+
+    EditOverlay() {
+        Util.clearBox(bounds);
+    }
+
+    boolean isEmpty() {
+        return tiles.isEmpty();
+    }
+
+    void clear() {
+        tiles.clear();
+        Util.clearBox(bounds);
+    }
+
+    /* Widens `box` by the edited cells, give or take the rest of their 64-cell rows */
+    void collectBounds(long[] box) {
+        if (!Util.isEmptyBox(bounds)) Util.widenBox(box, bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /* Whether cell (x, y) was edited */
+    boolean has(long x, long y) {
+        final long[] t = tiles.get(key(x, y));
+        return t != null && (t[(int) (y & 63)] >>> (x & 63) & 1) != 0;
+    }
+
+    /* State cell (x, y) is to get, `otherwise` when it wasn't edited */
+    boolean get(long x, long y, boolean otherwise) {
+        final long[] t = tiles.get(key(x, y));
+        if (t == null || (t[(int) (y & 63)] >>> (x & 63) & 1) == 0) return otherwise;
+
+        return (t[64 + (int) (y & 63)] >>> (x & 63) & 1) != 0;
+    }
+
+    void set(long x, long y, boolean alive) {
+        write(x & ~63L, y, 1L << (x & 63), alive ? -1L : 0);
+    }
+
+    /* Takes back the edit of cell (x, y) */
+    void remove(long x, long y) {
+        final long[] t = tiles.get(key(x, y));
+        if (t != null) t[(int) (y & 63)] &= ~(1L << (x & 63));
+    }
+
+    /* Sets every cell of the box from (x0, y0) to (x1, y1), both included */
+    void fill(long x0, long y0, long x1, long y1, boolean alive) {
+        for (long y = y0; y <= y1; y++) {
+            for (long x = x0 & ~63L; x <= x1; x += 64) write(x, y, span(x, x0, x1), alive ? -1L : 0);
+        }
+    }
+
+    /* Brings each cell of the box to life with a chance of `percent` in a hundred, and kills the others */
+    void randomFill(long x0, long y0, long x1, long y1, int percent, Random random) {
+        // chance in 256ths, a random word is ANDed in for each 0 bit and ORed for each 1 from the lowest up, 64 cells at a time
+        final int chance = Math.min(256, (Math.max(0, percent) * 256 + 50) / 100);
+
+        for (long y = y0; y <= y1; y++) {
+            for (long x = x0 & ~63L; x <= x1; x += 64) {
+                long alive = chance == 256 ? -1L : 0;
+
+                for (int bit = Integer.numberOfTrailingZeros(chance); bit < 8; bit++) {
+                    if ((chance >>> bit & 1) != 0) alive |= random.nextLong();
+                    else alive &= random.nextLong();
+                }
+
+                write(x, y, span(x, x0, x1), alive);
+            }
+        }
+    }
+
+    /* Sets the cells of a straight line from (x0, y0) to (x1, y1), both ends included */
+    void line(long x0, long y0, long x1, long y1, boolean alive) {
+        final long dx = Math.abs(x1 - x0), dy = -Math.abs(y1 - y0);
+        final int sx = x0 < x1 ? 1 : -1, sy = y0 < y1 ? 1 : -1;
+
+        for (long err = dx + dy; ; ) {
+            set(x0, y0, alive);
+            if (x0 == x1 && y0 == y1) return;
+
+            final long e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    /* Hands edited rows of tiles that meet the box to `v`, with x a multiple of 64 and cells outside the box included */
+    void forEachRow(long x0, long y0, long x1, long y1, RowVisitor v) {
+        x0 = Math.max(x0, bounds[0]);
+        y0 = Math.max(y0, bounds[1]);
+        x1 = Math.min(x1, bounds[2]);
+        y1 = Math.min(y1, bounds[3]);
+
+        for (long ty = y0 >> 6; ty <= y1 >> 6; ty++) {
+            for (long tx = x0 >> 6; tx <= x1 >> 6; tx++) {
+                final long[] t = tiles.get(key(tx << 6, ty << 6));
+                if (t == null) continue;
+
+                final int from = (int) Math.max(0, y0 - (ty << 6)), to = (int) Math.min(63, y1 - (ty << 6));
+                for (int i = from; i <= to; i++) {
+                    if (t[i] != 0) v.row(tx << 6, (ty << 6) + i, t[i], t[64 + i]);
+                }
+            }
+        }
+    }
+
+    /* Hands every edited row to `v` */
+    void forEachRow(RowVisitor v) {
+        for (final HashMap.Entry<Long, long[]> e : tiles.entrySet()) {
+            final long k = e.getKey(), x = (long) (int) k << 6, y = k >> 32 << 6;
+            final long[] t = e.getValue();
+
+            for (int i = 0; i < 64; i++) {
+                if (t[i] != 0) v.row(x, y + i, t[i], t[64 + i]);
+            }
+        }
+    }
+
+    /* Edits the cells of `mask` among the 64 from (x, y), x a multiple of 64, to the matching bits of `alive` */
+    private void write(long x, long y, long mask, long alive) {
+        if (mask == 0) return;
+
+        final long[] t = tiles.computeIfAbsent(key(x, y), k -> new long[128]);
+        final int i = (int) (y & 63);
+
+        t[i] |= mask;
+        t[64 + i] = t[64 + i] & ~mask | alive & mask;
+
+        Util.widenBox(bounds, x, y, x + 63, y);
+    }
+
+    /* Bits of the word from `x` that lie in [x0, x1] */
+    private static long span(long x, long x0, long x1) {
+        long mask = -1L;
+        if (x0 > x) mask <<= x0 - x;
+        if (x1 < x + 63) mask &= -1L >>> (x + 63 - x1);
+        return mask;
+    }
+
+    private static Long key(long x, long y) {
+        return y >> 6 << 32 | (x >> 6) & 0xFFFFFFFFL;
+    }
+}
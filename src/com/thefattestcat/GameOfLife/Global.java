@@ -6,7 +6,9 @@ public class Global {
     public static final int CELL_SIZE = 32;
     public static final double SCALE_MULTIPLIER = 1.5;
     public static final double MIN_SCALE = 4.0;
-    public static final double MAX_SCALE = 0.125;
+    // zoomed out until a pixel covers 64x64 cells, past 4x4 they are drawn as the density of blocks
+    public static final double MAX_SCALE = 1.0 / (64 * CELL_SIZE);
+    public static final double GRID_MIN_SCALE = 0.25;
 
     public static final Color GRID_DARK = new Color(0.1f, 0.1f, 0.1f);
     public static final Color GRID_LIGHT = new Color(0.5f, 0.5f, 0.5f);
@@ -0,0 +1,477 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.Arrays;
+
+/*
+ * Fixed square world on a BitGrid, stepping only the words next to last
+ * generation's changes, or on one thread, in tiles where many words changed,
+ * all of the tile's rows in a sweep (see TileModes)
+ */
+class GridEngine implements LifeEngine {
+    private final BitGrid grid;
+    private UpdateBuffer current;
+    private UpdateBuffer next;
+    private final TileStepper tileStepper;
+    private final RowKernel rows;
+    private final TileModes modes;
+    // next generation of the dense tiles, allocated once there is one
+    private long[] swept;
+
+    private long generation = 0;
+    private long changedCells = 0;
+    private double denseFraction = 0;
+    private long hash = 0;
+    private final long[] changed = new long[4];
+
+    public GridEngine(int size, Rule rule) {
+        this(size, rule, 1);
+    }
+
+    /* `threads` above 1 step the whole world in parallel tiles, 0 uses every core */
+    public GridEngine(int size, Rule rule, int threads) {
+        this(size, rule, threads, "scalar");
+    }
+
+    /* A `kernel` other than scalar steps the whole world with it, in tiles, even on one thread */
+    public GridEngine(int size, Rule rule, int threads, String kernel) {
+        grid = new BitGrid(size, rule);
+        current = new UpdateBuffer(grid.getWordCount());
+        next = new UpdateBuffer(grid.getWordCount());
+
+        if (threads == 0) threads = Runtime.getRuntime().availableProcessors();
+
+        rows = RowKernel.of(kernel, grid);
+        tileStepper = threads > 1 || rows.getLanes() > 1 ? new TileStepper(grid, rows, threads, Settings.getTileSize()) : null;
+        modes = tileStepper == null ? new TileModes(grid.getSize(), grid.getWordsPerRow(), Settings.getTileSize()) : null;
+        Util.clearBox(changed);
+    }
+
+    @Override
+    public int getSize() {
+        return grid.getSize();
+    }
+
+    @Override
+    public Rule getRule() {
+        return grid.getRule();
+    }
+
+    @Override
+    public boolean get(long x, long y) {
+        return grid.get((int) x, (int) y);
+    }
+
+    @Override
+    public void flip(long x, long y) {
+        grid.flip((int) x, (int) y);
+        considerNextAround(grid.indexOf((int) x, (int) y), 1L << (x & 63));
+    }
+
+    @Override
+    public void setRun(long x, long y, long length, boolean alive) {
+        final long[] words = grid.getWords();
+        final int row = (int) y * grid.getWordsPerRow();
+
+        for (long end = x + length; x < end; ) {
+            int bit = (int) (x & 63);
+            int n = (int) Math.min(64 - bit, end - x);
+            long mask = (n == 64 ? -1L : (1L << n) - 1) << bit;
+
+            int w = row + (int) (x >>> 6);
+            long diff = (alive ? ~words[w] : words[w]) & mask;
+
+            if (diff != 0) {
+                words[w] ^= diff;
+                considerNextAround(w, diff);
+            }
+
+            x += n;
+        }
+    }
+
+    @Override
+    public void setTile(long tx, long ty, long[] rows) {
+        final int size = grid.getSize();
+        if (tx < 0 || tx >= grid.getWordsPerRow() || ty < 0 || ty * 64 >= size) return;
+
+        for (int i = 0, y = (int) ty * 64; i < 64 && y < size; i++, y++) {
+            long old = grid.getWord((int) tx, y);
+            grid.setWord((int) tx, y, rows[i]);
+
+            long diff = old ^ grid.getWord((int) tx, y);
+            if (diff != 0) considerNextAround(grid.indexOf((int) tx * 64, y), diff);
+        }
+    }
+
+    @Override
+    public long getRow(long x, long y) {
+        return grid.getWord((int) (x >>> 6), (int) y);
+    }
+
+    @Override
+    public void xorRow(long x, long y, long mask) {
+        final int w = grid.indexOf((int) x, (int) y);
+
+        grid.getWords()[w] ^= mask;
+        considerNextAround(w, mask);
+    }
+
+    @Override
+    public void step() {
+        swap();
+        generation++;
+        changedCells = 0;
+
+        if (tileStepper != null) {
+            tileStepper.step(current);
+            final long[] words = grid.getWords();
+            for (int i = 0; i < current.changeCount(); i++) {
+                int w = current.getChangeIndex(i);
+                long diff = current.getChangeMask(i);
+
+                markChanged(w);
+                rehash(w, words[w] ^ diff, words[w]);
+                changedCells += Long.bitCount(diff);
+            }
+            return;
+        }
+
+        final long[] words = grid.getWords();
+        denseFraction = modes.getDenseTiles() / (double) modes.getTileCount();
+        if (modes.getDenseTiles() > 0) sweepDenseTiles(words);
+
+        for (int i = 0; i < current.size(); i++) {
+            int w = current.get(i);
+            // edge words of dense tiles are queued for their sparse neighbours, but already stepped
+            if (denseFraction > 0 && modes.isDense(modes.tileOf(w))) continue;
+
+            long diff = grid.nextWord(w) ^ words[w];
+            if (diff != 0) {
+                current.putChange(w, diff);
+                modes.count(modes.tileOf(w));
+            }
+        }
+        modes.update();
+
+        final boolean anyDense = modes.getDenseTiles() > 0;
+        for (int i = 0; i < current.changeCount(); i++) {
+            int w = current.getChangeIndex(i);
+            long diff = current.getChangeMask(i);
+
+            words[w] ^= diff;
+            if (anyDense && modes.isInner(w, diff)) {
+                // swept whole next generation anyway
+                markChanged(w);
+                rehash(w, words[w] ^ diff, words[w]);
+            }
+            else considerNextAround(w, diff);
+            changedCells += Long.bitCount(diff);
+        }
+    }
+
+    /* Steps every word of the dense tiles with the row kernel, words not queued come out the same */
+    private void sweepDenseTiles(long[] words) {
+        if (swept == null) swept = new long[words.length];
+        final int wpr = grid.getWordsPerRow();
+        final int[] tiles = modes.getDenseList();
+
+        for (int i = 0; i < modes.getDenseTiles(); i++) {
+            final int t = tiles[i];
+            final int fromX = modes.getFromX(t), toX = modes.getToX(t);
+
+            for (int y = modes.getFromY(t), toY = modes.getToY(t); y < toY; y++) {
+                rows.step(words, swept, y, fromX, toX);
+
+                for (int w = y * wpr + fromX, end = y * wpr + toX; w < end; w++) {
+                    long diff = swept[w] ^ words[w];
+                    if (diff != 0) {
+                        current.putChange(w, diff);
+                        modes.count(t);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public double getDenseFraction() {
+        return modes == null ? 1 : denseFraction;
+    }
+
+    @Override
+    public boolean forEachChange(ChangeVisitor v) {
+        final int wpr = grid.getWordsPerRow();
+
+        for (int i = 0; i < current.changeCount(); i++) {
+            int w = current.getChangeIndex(i);
+            v.change((w % wpr) * 64L, w / wpr, current.getChangeMask(i));
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean hasHash() {
+        return true;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    @Override
+    public void jump(int log2) {
+        for (long i = 1L << log2; i > 0; i--) step();
+    }
+
+    @Override
+    public void clear() {
+        current.reset();
+        next.reset();
+        if (modes != null) modes.reset();
+
+        grid.clear();
+        generation = 0;
+        hash = 0;
+        Util.widenBox(changed, 0, 0, grid.getSize() - 1, grid.getSize() - 1);
+    }
+
+    @Override
+    public long getPopulation() {
+        return grid.population();
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public boolean getBounds(long[] bounds) {
+        return grid.getBounds(bounds);
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public void collectChanged(long[] box) {
+        if (Util.isEmptyBox(changed)) return;
+
+        Util.widenBox(box, changed[0], changed[1], changed[2], changed[3]);
+        Util.clearBox(changed);
+    }
+
+    @Override
+    public WorldSnapshot newSnapshot() {
+        return new GridSnapshot(grid.getSize(), grid.getWordsPerRow());
+    }
+
+    @Override
+    public void copyTo(WorldSnapshot s) {
+        GridSnapshot gs = (GridSnapshot) s;
+        long[] words = grid.getWords();
+
+        System.arraycopy(words, 0, gs.words, 0, words.length);
+        gs.generation = generation;
+        gs.population = grid.population();
+    }
+
+    protected BitGrid getGrid() {
+        return grid;
+    }
+
+    /* Words changed by the last step */
+    protected UpdateBuffer getChanges() {
+        return current;
+    }
+
+    private void markChanged(int w) {
+        final int wpr = grid.getWordsPerRow();
+        final int y = w / wpr, wx = w - y * wpr;
+
+        Util.widenBox(changed, wx * 64L, y, wx * 64L + 63, y);
+    }
+
+    private void rehash(int w, long old, long now) {
+        hash ^= Util.zobrist(w, old) ^ Util.zobrist(w, now);
+    }
+
+    /* Marks the words around word `w` whose cells may change after `diff` bits of it did */
+    private void considerNextAround(int w, long diff) {
+        final int wpr = grid.getWordsPerRow();
+        final int wx = w % wpr;
+
+        markChanged(w);
+        rehash(w, grid.getWords()[w] ^ diff, grid.getWords()[w]);
+
+        int from = (diff & 1L) != 0 && wx > 0 ? w - 1 : w;
+        int to = (diff & Long.MIN_VALUE) != 0 && wx < wpr - 1 ? w + 1 : w;
+
+        for (int i = from; i <= to; i++) {
+            if (i >= wpr) next.add(i - wpr);
+            next.add(i);
+            if (i + wpr < next.capacity()) next.add(i + wpr);
+        }
+    }
+
+    private void swap() {
+        UpdateBuffer b = current;
+        current = next;
+        next = b;
+        next.reset();
+    }
+}
+
+/*
+ * How each tile of a grid steps: sparse, only the words queued in it, or
+ * dense, a sweep of all its rows, which costs less a word once many of them
+ * change anyway. The words that changed in a tile decide its mode for the
+ * next generation; it goes dense above DENSE_PERCENT of them and back to
+ * sparse below SPARSE_PERCENT, so one at the edge of a soup doesn't flip
+ * every generation. A dense tile needs no queue but for its edge words, whose
+ * neighbours may be in a sparse one. Both step to the same result, only the
+ * cost differs.
+ */
+class TileModes {
+    static final int DENSE_PERCENT = 30;
+    static final int SPARSE_PERCENT = 20;
+
+    private final int size, wordsPerRow;
+    private final int tileWords, tileRows, tilesX, tileCount;
+    // tile of a word from its row and column, summed
+    private final int[] rowTiles, columnTiles;
+    // whether a row is the first or last of its tile, and a column the first or the last
+    private final boolean[] rowEdges, firstColumns, lastColumns;
+    // words in each tile, fewer at the right and bottom of the world
+    private final int[] words;
+
+    private final int[] changed;
+    private final boolean[] dense;
+    // tiles with changes this generation that were sparse, and the dense tiles
+    private final int[] touched, denseList;
+    private int touchedCount = 0, denseTiles = 0;
+
+    TileModes(int size, int wordsPerRow, int tileSize) {
+        this.size = size;
+        this.wordsPerRow = wordsPerRow;
+
+        tileWords = Math.max(1, (tileSize + 63) >>> 6);
+        tileRows = Math.max(1, tileSize);
+        tilesX = (wordsPerRow + tileWords - 1) / tileWords;
+        tileCount = tilesX * ((size + tileRows - 1) / tileRows);
+
+        rowTiles = new int[size];
+        rowEdges = new boolean[size];
+        for (int y = 0; y < size; y++) {
+            rowTiles[y] = y / tileRows * tilesX;
+            rowEdges[y] = y % tileRows == 0 || y % tileRows == tileRows - 1 || y == size - 1;
+        }
+
+        columnTiles = new int[wordsPerRow];
+        firstColumns = new boolean[wordsPerRow];
+        lastColumns = new boolean[wordsPerRow];
+        for (int x = 0; x < wordsPerRow; x++) {
+            columnTiles[x] = x / tileWords;
+            firstColumns[x] = x % tileWords == 0;
+            lastColumns[x] = x % tileWords == tileWords - 1 || x == wordsPerRow - 1;
+        }
+
+        words = new int[tileCount];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < wordsPerRow; x += tileWords) words[rowTiles[y] + columnTiles[x]] += Math.min(tileWords, wordsPerRow - x);
+        }
+
+        changed = new int[tileCount];
+        dense = new boolean[tileCount];
+        touched = new int[tileCount];
+        denseList = new int[tileCount];
+    }
+
+    /* Tile of word `w` */
+    int tileOf(int w) {
+        final int y = w / wordsPerRow;
+        return rowTiles[y] + columnTiles[w - y * wordsPerRow];
+    }
+
+    /* Counts a changed word of tile `t` */
+    void count(int t) {
+        if (changed[t]++ == 0 && !dense[t]) touched[touchedCount++] = t;
+    }
+
+    /* Picks the modes for the next generation from the words counted, and starts counting again */
+    void update() {
+        final int denseBefore = denseTiles;
+        denseTiles = 0;
+
+        // a dense tile may go sparse, decided before the list is written over
+        for (int i = 0; i < denseBefore; i++) decide(denseList[i]);
+        for (int i = 0; i < touchedCount; i++) decide(touched[i]);
+        touchedCount = 0;
+    }
+
+    private void decide(int t) {
+        final long percent = changed[t] * 100L / words[t];
+        changed[t] = 0;
+
+        if (dense[t] ? percent < SPARSE_PERCENT : percent > DENSE_PERCENT) dense[t] = !dense[t];
+        if (dense[t]) denseList[denseTiles++] = t;
+    }
+
+    /* True if `diff` of word `w` only reaches words of its own dense tile, so it needs no queueing */
+    boolean isInner(int w, long diff) {
+        final int y = w / wordsPerRow, x = w - y * wordsPerRow;
+        if (rowEdges[y] || !dense[rowTiles[y] + columnTiles[x]]) return false;
+
+        // the words beside are in the next tile only past a changed end bit
+        return !(firstColumns[x] && (diff & 1L) != 0) && !(lastColumns[x] && (diff & Long.MIN_VALUE) != 0);
+    }
+
+    void reset() {
+        Arrays.fill(changed, 0);
+        Arrays.fill(dense, false);
+        touchedCount = 0;
+        denseTiles = 0;
+    }
+
+    boolean isDense(int t) {
+        return dense[t];
+    }
+
+    /* The dense tiles, the first getDenseTiles() of it */
+    int[] getDenseList() {
+        return denseList;
+    }
+
+    int getDenseTiles() {
+        return denseTiles;
+    }
+
+    int getTileCount() {
+        return tileCount;
+    }
+
+    int getFromX(int t) {
+        return t % tilesX * tileWords;
+    }
+
+    int getToX(int t) {
+        return Math.min(getFromX(t) + tileWords, wordsPerRow);
+    }
+
+    int getFromY(int t) {
+        return t / tilesX * tileRows;
+    }
+
+    int getToY(int t) {
+        return Math.min(getFromY(t) + tileRows, size);
+    }
+}
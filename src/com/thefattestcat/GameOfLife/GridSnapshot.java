@@ -0,0 +1,54 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+
+/* Copy of the words of a grid, for GridEngine and LtlEngine */
+class GridSnapshot extends WorldSnapshot {
+    final int size;
+    final int wordsPerRow;
+    final long[] words;
+
+    GridSnapshot(int size, int wordsPerRow) {
+        this.size = size;
+        this.wordsPerRow = wordsPerRow;
+        words = new long[size * wordsPerRow];
+    }
+
+    @Override
+    boolean get(long x, long y) {
+        if (x < 0 || x >= size || y < 0 || y >= size) return false;
+        return (words[(int) y * wordsPerRow + (int) (x >>> 6)] >>> (x & 63) & 1) != 0;
+    }
+
+    @Override
+    long getRow(long x, long y) {
+        if (y < 0 || y >= size || x >= size || x <= -64) return 0;
+
+        final int row = (int) y * wordsPerRow;
+        final int wx = (int) Math.floorDiv(x, 64);
+        final int bit = (int) (x & 63);
+
+        long lo = wx >= 0 ? words[row + wx] : 0;
+        if (bit == 0) return lo;
+
+        long hi = wx + 1 < wordsPerRow ? words[row + wx + 1] : 0;
+        return lo >>> bit | hi << (64 - bit);
+    }
+
+    @Override
+    void forEachTile(TileVisitor v) throws IOException {
+        final long[] rows = new long[64];
+
+        for (int ty = 0; ty * 64 < size; ty++) {
+            for (int wx = 0; wx < wordsPerRow; wx++) {
+                long any = 0;
+                for (int i = 0, y = ty * 64; i < 64; i++, y++) {
+                    rows[i] = y < size ? words[y * wordsPerRow + wx] : 0;
+                    any |= rows[i];
+                }
+
+                if (any != 0) v.tile(wx, ty, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * HashLife engine. The plane is a quadtree of canonical (hash-consed) nodes,
+ * so equal regions exist only once, and every node memoizes its result: the
+ * centre half of it 2^(level - 2) generations ahead. Steps shorter than that
+ * go through a second memo per node, for the last step size it was asked,
+ * so mixing step sizes never throws the full results away. Repeating
+ * patterns then cost time logarithmic in the number of generations. The universe has no
+ * border, the root is a square centred on (0, 0) grown as the pattern does.
+ */
+class HashLife implements LifeEngine {
+    private static final int START_LEVEL = 4;
+    private static final int MAX_LEVEL = 60;
+    private static final int BYTES_PER_NODE = 80;
+
+    private final Rule rule;
+    private final byte[] leafResults;
+
+    private final Node dead = new Node(0);
+    private final Node alive = new Node(1);
+    private final Node[] empties = new Node[MAX_LEVEL + 1];
+
+    private Node[] table;
+    private int nodeCount;
+    private int nextId;
+    private int gcEpoch = 0;
+    private final int maxNodes;
+
+    private Node root;
+    private long generation = 0;
+
+    public HashLife(int memoryMegabytes, Rule rule) {
+        this.rule = rule;
+        leafResults = rule.getLeafResults();
+
+        maxNodes = (int) Math.min(Integer.MAX_VALUE / 2, (long) memoryMegabytes * 1024 * 1024 / BYTES_PER_NODE);
+        clear();
+    }
+
+    @Override
+    public int getSize() {
+        return 0;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public boolean get(long x, long y) {
+        return get(root, x, y);
+    }
+
+    static boolean get(Node root, long x, long y) {
+        long half = 1L << (root.level - 1);
+        if (x < -half || x >= half || y < -half || y >= half) return false;
+
+        Node n = root;
+        x += half;
+        y += half;
+
+        for (int l = root.level; l > 0; l--) {
+            if (n.population == 0) return false;
+
+            long h = 1L << (l - 1);
+            boolean east = x >= h, south = y >= h;
+
+            n = south ? (east ? n.se : n.sw) : (east ? n.ne : n.nw);
+            if (east) x -= h;
+            if (south) y -= h;
+        }
+
+        return n.population != 0;
+    }
+
+    @Override
+    public void flip(long x, long y) {
+        set(x, y, !get(x, y));
+    }
+
+    public void set(long x, long y, boolean state) {
+        while (!contains(root, x, y)) root = expand(root);
+
+        long half = 1L << (root.level - 1);
+        root = set(root, x + half, y + half, state);
+    }
+
+    @Override
+    public void setTile(long tx, long ty, long[] rows) {
+        long x = tx << 6, y = ty << 6;
+
+        // from level 7 on quadrant borders fall on multiples of 64, so the tile is a single node
+        while (root.level < 7 || !contains(root, x, y) || !contains(root, x + 63, y + 63)) root = expand(root);
+
+        long half = 1L << (root.level - 1);
+        root = put(root, x + half, y + half, tile(rows, 0, 0, 6));
+    }
+
+    @Override
+    public void step() {
+        jump(0);
+    }
+
+    @Override
+    public void jump(int log2) {
+        while (root.level < log2 + 3 || !isCentred(root)) {
+            if (root.level >= MAX_LEVEL) throw new IllegalStateException("HashLife universe is too large");
+            root = expand(root);
+        }
+
+        root = result(root, log2);
+        generation += 1L << log2;
+
+        if (nodeCount > maxNodes) collect();
+    }
+
+    @Override
+    public void clear() {
+        table = new Node[1 << 16];
+        nodeCount = 0;
+        nextId = 2;
+
+        for (int i = 0; i < empties.length; i++) empties[i] = null;
+        empties[0] = dead;
+
+        root = empty(START_LEVEL);
+        generation = 0;
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public long getPopulation() {
+        return root.population;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public boolean getBounds(long[] bounds) {
+        if (root.population == 0) return false;
+
+        bounds[0] = bounds[1] = Long.MAX_VALUE;
+        bounds[2] = bounds[3] = Long.MIN_VALUE;
+
+        long half = 1L << (root.level - 1);
+        findBounds(root, -half, -half, bounds);
+        return true;
+    }
+
+    /* Widens `bounds` by the live cells of `n` whose corner is (x, y), skipping nodes that can't widen them */
+    private static void findBounds(Node n, long x, long y, long[] bounds) {
+        if (n.population == 0) return;
+
+        long side = 1L << n.level;
+        if (x >= bounds[0] && x + side - 1 <= bounds[2] && y >= bounds[1] && y + side - 1 <= bounds[3]) return;
+
+        if (n.level == 0) {
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x);
+            bounds[3] = Math.max(bounds[3], y);
+            return;
+        }
+
+        long h = side >>> 1;
+        findBounds(n.nw, x, y, bounds);
+        findBounds(n.ne, x + h, y, bounds);
+        findBounds(n.sw, x, y + h, bounds);
+        findBounds(n.se, x + h, y + h, bounds);
+    }
+
+    @Override
+    public WorldSnapshot newSnapshot() {
+        return new HashLifeSnapshot();
+    }
+
+    @Override
+    public void copyTo(WorldSnapshot s) {
+        ((HashLifeSnapshot) s).root = root;
+        s.generation = generation;
+        s.population = root.population;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private Node node(Node nw, Node ne, Node sw, Node se) {
+        int h = hash(nw, ne, sw, se);
+        int i = h & (table.length - 1);
+
+        for (Node n = table[i]; n != null; n = n.next) {
+            if (n.nw == nw && n.ne == ne && n.sw == sw && n.se == se) return n;
+        }
+
+        Node n = new Node(nw, ne, sw, se, nextId++, h);
+        n.next = table[i];
+        table[i] = n;
+
+        if (++nodeCount > table.length - (table.length >>> 2)) resize(table.length * 2);
+        return n;
+    }
+
+    private Node empty(int level) {
+        Node e = empties[level];
+        if (e == null) {
+            Node c = empty(level - 1);
+            e = empties[level] = node(c, c, c, c);
+        }
+
+        return e;
+    }
+
+    private Node leaf(int bit) {
+        return bit == 0 ? dead : alive;
+    }
+
+    private static boolean contains(Node root, long x, long y) {
+        long half = 1L << (root.level - 1);
+        return x >= -half && x < half && y >= -half && y < half;
+    }
+
+    private Node set(Node n, long x, long y, boolean state) {
+        if (n.level == 0) return state ? alive : dead;
+
+        long h = 1L << (n.level - 1);
+        if (y < h) {
+            if (x < h) return node(set(n.nw, x, y, state), n.ne, n.sw, n.se);
+            return node(n.nw, set(n.ne, x - h, y, state), n.sw, n.se);
+        }
+
+        if (x < h) return node(n.nw, n.ne, set(n.sw, x, y - h, state), n.se);
+        return node(n.nw, n.ne, n.sw, set(n.se, x - h, y - h, state));
+    }
+
+    /* `n` with the node of `sub`'s level whose corner is (x, y) replaced by it */
+    private Node put(Node n, long x, long y, Node sub) {
+        if (n.level == sub.level) return sub;
+
+        long h = 1L << (n.level - 1);
+        if (y < h) {
+            if (x < h) return node(put(n.nw, x, y, sub), n.ne, n.sw, n.se);
+            return node(n.nw, put(n.ne, x - h, y, sub), n.sw, n.se);
+        }
+
+        if (x < h) return node(n.nw, n.ne, put(n.sw, x, y - h, sub), n.se);
+        return node(n.nw, n.ne, n.sw, put(n.se, x - h, y - h, sub));
+    }
+
+    /* Node of the 2^level square at (x, y) of a 64x64 tile */
+    private Node tile(long[] rows, int x, int y, int level) {
+        int side = 1 << level;
+        long mask = (side == 64 ? -1L : (1L << side) - 1) << x;
+
+        long any = 0;
+        for (int i = y; i < y + side; i++) any |= rows[i] & mask;
+        if (any == 0) return empty(level);
+        if (level == 0) return alive;
+
+        int h = side >>> 1;
+        return node(
+            tile(rows, x, y, level - 1), tile(rows, x + h, y, level - 1),
+            tile(rows, x, y + h, level - 1), tile(rows, x + h, y + h, level - 1)
+        );
+    }
+
+    /* Same contents one level higher, still centred on (0, 0) */
+    private Node expand(Node n) {
+        Node e = empty(n.level - 1);
+        return node(
+            node(e, e, e, n.nw), node(e, e, n.ne, e),
+            node(e, n.sw, e, e), node(n.se, e, e, e)
+        );
+    }
+
+    /* Whether all of the population sits in the centre quarter, so it can't leave the result */
+    private static boolean isCentred(Node n) {
+        return n.population == n.nw.se.se.population + n.ne.sw.sw.population
+                              + n.sw.ne.ne.population + n.se.nw.nw.population;
+    }
+
+    private Node centre(Node n) {
+        return node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+    }
+
+    /* Centre of `n`, one level lower, 2^min(level - 2, log2) generations ahead */
+    private Node result(Node n, int log2) {
+        if (n.level - 2 <= log2) return result(n);
+        if (n.stepped != null && n.steppedLog2 == log2) return n.stepped;
+
+        Node r;
+        if (n.population == 0) {
+            r = n.nw;
+        }
+        else {
+            // the nine overlapping subnodes 2^log2 ahead, then the centres of their four squares without stepping
+            Node n01 = node(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw);
+            Node n10 = node(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne);
+            Node n11 = node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+            Node n12 = node(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+            Node n21 = node(n.sw.ne, n.se.nw, n.sw.se, n.se.sw);
+
+            Node r00 = result(n.nw, log2), r01 = result(n01, log2), r02 = result(n.ne, log2);
+            Node r10 = result(n10, log2), r11 = result(n11, log2), r12 = result(n12, log2);
+            Node r20 = result(n.sw, log2), r21 = result(n21, log2), r22 = result(n.se, log2);
+
+            r = node(centre(node(r00, r01, r10, r11)), centre(node(r01, r02, r11, r12)),
+                     centre(node(r10, r11, r20, r21)), centre(node(r11, r12, r21, r22)));
+        }
+
+        n.stepped = r;
+        n.steppedLog2 = log2;
+        return r;
+    }
+
+    /* Centre of `n`, one level lower, 2^(level - 2) generations ahead */
+    private Node result(Node n) {
+        if (n.result != null) return n.result;
+
+        Node r;
+        if (n.population == 0) {
+            r = n.nw;
+        }
+        else if (n.level == 2) {
+            int b = leafResults[leafBits(n)];
+            r = node(leaf(b & 1), leaf(b >>> 1 & 1), leaf(b >>> 2 & 1), leaf(b >>> 3 & 1));
+        }
+        else {
+            Node n00 = n.nw, n02 = n.ne, n20 = n.sw, n22 = n.se;
+            Node n01 = node(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw);
+            Node n10 = node(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne);
+            Node n11 = node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+            Node n12 = node(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+            Node n21 = node(n.sw.ne, n.se.nw, n.sw.se, n.se.sw);
+
+            Node r00 = result(n00), r01 = result(n01), r02 = result(n02);
+            Node r10 = result(n10), r11 = result(n11), r12 = result(n12);
+            Node r20 = result(n20), r21 = result(n21), r22 = result(n22);
+
+            Node a = node(r00, r01, r10, r11), b = node(r01, r02, r11, r12);
+            Node c = node(r10, r11, r20, r21), d = node(r11, r12, r21, r22);
+
+            r = node(result(a), result(b), result(c), result(d));
+        }
+
+        n.result = r;
+        return r;
+    }
+
+    private static int leafBits(Node n) {
+        return quadBits(n.nw, 0) | quadBits(n.ne, 2) | quadBits(n.sw, 8) | quadBits(n.se, 10);
+    }
+
+    private static int quadBits(Node n, int shift) {
+        return (int) (n.nw.population << shift | n.ne.population << (shift + 1)
+                    | n.sw.population << (shift + 4) | n.se.population << (shift + 5));
+    }
+
+    /* Drops every node not reachable from the root, and memoized results pointing at them */
+    private void collect() {
+        int epoch = ++gcEpoch;
+
+        mark(root, epoch);
+        for (final Node e : empties) {
+            if (e != null) mark(e, epoch);
+        }
+
+        Node[] old = table;
+        table = new Node[old.length];
+        nodeCount = 0;
+
+        for (Node head : old) {
+            Node n = head;
+            while (n != null) {
+                Node following = n.next;
+
+                if (n.mark == epoch) {
+                    if (n.result != null && n.result.mark != epoch) n.result = null;
+                    if (n.stepped != null && n.stepped.mark != epoch) n.stepped = null;
+
+                    int i = n.hash & (table.length - 1);
+                    n.next = table[i];
+                    table[i] = n;
+                    nodeCount++;
+                }
+
+                n = following;
+            }
+        }
+    }
+
+    private static void mark(Node n, int epoch) {
+        if (n.mark == epoch) return;
+        n.mark = epoch;
+
+        if (n.level == 0) return;
+        mark(n.nw, epoch);
+        mark(n.ne, epoch);
+        mark(n.sw, epoch);
+        mark(n.se, epoch);
+    }
+
+    private void resize(int length) {
+        Node[] old = table;
+        table = new Node[length];
+
+        for (Node head : old) {
+            Node n = head;
+            while (n != null) {
+                Node following = n.next;
+
+                int i = n.hash & (length - 1);
+                n.next = table[i];
+                table[i] = n;
+
+                n = following;
+            }
+        }
+    }
+
+    private static int hash(Node nw, Node ne, Node sw, Node se) {
+        int h = nw.id;
+        h = h * 0x9E3779B1 + ne.id;
+        h = h * 0x9E3779B1 + sw.id;
+        h = h * 0x9E3779B1 + se.id;
+        return h ^ (h >>> 15);
+    }
+
+    /* Nodes never change once built, so a snapshot only has to keep the root */
+    static class HashLifeSnapshot extends WorldSnapshot {
+        Node root;
+
+        @Override
+        boolean get(long x, long y) {
+            return root != null && HashLife.get(root, x, y);
+        }
+
+        @Override
+        void forEachTile(TileVisitor v) throws IOException {
+            if (root == null || root.population == 0) return;
+
+            final long[] rows = new long[64];
+            long half = 1L << (root.level - 1);
+
+            if (root.level >= 7) {
+                visitTiles(root, -half >> 6, -half >> 6, rows, v);
+                return;
+            }
+
+            // a small root straddles the tiles around (0, 0)
+            for (long ty = -1; ty <= 0; ty++) {
+                for (long tx = -1; tx <= 0; tx++) {
+                    long any = 0;
+                    for (int i = 0; i < 64; i++) {
+                        rows[i] = 0;
+                        for (int j = 0; j < 64; j++) {
+                            if (HashLife.get(root, tx * 64 + j, ty * 64 + i)) rows[i] |= 1L << j;
+                        }
+                        any |= rows[i];
+                    }
+
+                    if (any != 0) v.tile(tx, ty, rows);
+                }
+            }
+        }
+
+        private static void visitTiles(Node n, long tx, long ty, long[] rows, TileVisitor v) throws IOException {
+            if (n.population == 0) return;
+
+            if (n.level == 6) {
+                Arrays.fill(rows, 0);
+                fill(n, rows, 0, 0);
+                v.tile(tx, ty, rows);
+                return;
+            }
+
+            long h = 1L << (n.level - 7);
+            visitTiles(n.nw, tx, ty, rows, v);
+            visitTiles(n.ne, tx + h, ty, rows, v);
+            visitTiles(n.sw, tx, ty + h, rows, v);
+            visitTiles(n.se, tx + h, ty + h, rows, v);
+        }
+
+        private static void fill(Node n, long[] rows, int x, int y) {
+            if (n.population == 0) return;
+            if (n.level == 0) {
+                rows[y] |= 1L << x;
+                return;
+            }
+
+            int h = 1 << (n.level - 1);
+            fill(n.nw, rows, x, y);
+            fill(n.ne, rows, x + h, y);
+            fill(n.sw, rows, x, y + h);
+            fill(n.se, rows, x + h, y + h);
+        }
+    }
+
+    static final class Node {
+        final Node nw, ne, sw, se;
+        final int level;
+        final long population;
+        final int id;
+        final int hash;
+
+        Node result;
+        // result 2^steppedLog2 generations ahead, for steps shorter than the full one
+        Node stepped;
+        int steppedLog2;
+        Node next;
+        int mark;
+
+        Node(int state) {
+            nw = ne = sw = se = null;
+            level = 0;
+            population = state;
+            id = state;
+            hash = state;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se, int id, int hash) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.id = id;
+            this.hash = hash;
+
+            level = nw.level + 1;
+            population = nw.population + ne.population + sw.population + se.population;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+
+/* Runs a pattern for a number of generations without any window and prints how fast it went */
+final class Headless {
+    private Headless() {}
+
+    static void run(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: headless <pattern> <generations> [checkpoint]");
+            System.err.println("  pattern is glider, rpentomino, acorn, gosper, soup:<percent>[:<seed>] or a .rle, .lif, .cells or .ckpt file");
+            System.err.println("  checkpoint is where to save the final generation");
+            return;
+        }
+
+        CellWorld world;
+        long generations;
+
+        try {
+            generations = Long.parseLong(args[2]);
+        }
+        catch (NumberFormatException err) {
+            System.err.printf("Bad number of generations `%s`\n", args[2]);
+            return;
+        }
+
+        try {
+            if (args[1].endsWith(".ckpt")) world = new CellWorld(Checkpoint.load(args[1], Settings.getEngine(), Settings.getWorldSize()));
+            else {
+                world = new CellWorld(Settings.getWorldSize());
+                load(world, args[1]);
+            }
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot load pattern `%s`: %s\n", args[1], err.getMessage());
+            return;
+        }
+
+        LifeEngine engine = world.getEngine();
+        final String stats = Settings.getStatsFile();
+        if (!stats.isEmpty()) world.openStats(stats);
+
+        long start = System.nanoTime();
+        world.advance(generations);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(engine, generations, seconds);
+        if (!stats.isEmpty()) System.out.printf("stats         %d generations to %s\n", world.closeStats(), stats);
+
+        if (args.length > 3) {
+            start = System.nanoTime();
+            world.checkpoint(args[3]).join();
+            System.out.printf("checkpoint    %s in %.3f s\n", args[3], (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /* Soups fill the world (or a 256 square without a border), other patterns go to its centre */
+    static void load(CellWorld world, String spec) throws IOException {
+        final int ws = world.getSize();
+        final int soupSize = ws == 0 ? 256 : ws;
+        final long centre = spec.startsWith("soup:") || ws == 0 ? 0 : ws / 2;
+
+        PatternIO.load(spec, soupSize, soupSize, PatternIO.centredOn(world, centre, centre));
+    }
+
+    private static void report(LifeEngine engine, long generations, double seconds) {
+        long[] bounds = new long[4];
+        boolean empty = !engine.getBounds(bounds);
+
+        long area = engine.getSize() != 0 ? (long) engine.getSize() * engine.getSize()
+                  : empty ? 0 : (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+
+        System.out.printf("generations   %d in %.3f s\n", generations, seconds);
+        System.out.printf("rule          %s\n", engine.getRule());
+        System.out.printf("generation    %d\n", engine.getGeneration());
+        System.out.printf("population    %d\n", engine.getPopulation());
+
+        if (empty) System.out.println("bounding box  empty");
+        else System.out.printf("bounding box  (%d, %d) - (%d, %d), %d x %d\n", bounds[0], bounds[1], bounds[2], bounds[3],
+                               bounds[2] - bounds[0] + 1, bounds[3] - bounds[1] + 1);
+
+        System.out.printf("generations/s %.1f\n", generations / seconds);
+        System.out.printf("cells/s       %.4g\n", area * (double) generations / seconds);
+    }
+}
@@ -0,0 +1,332 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+
+/*
+ * Bounded history of a world for rewinding. Every step adds a record of the
+ * 64-cell rows it changed as xor masks, which take the step back as well as
+ * forward, and every so often a keyframe holds the whole world the same way,
+ * as changes from an empty one. A row is stored as varints of its distance
+ * from the row before and of its mask past the lowest set bit, or the mask as
+ * is when it is too spread out for that to pay, so a quiet generation takes a
+ * few bytes whatever the size of the world.
+ *
+ * Records sit in a byte ring that grows up to the budget, which also pays
+ * for their index, and then drops the oldest keyframe along with the deltas
+ * that need it. A new keyframe is taken after edits and gaps in the
+ * generations, once the deltas since the last one outgrow a few times it and
+ * a slice of the budget (a keyframe copies the whole world, however little
+ * lives in it), or every KEYFRAME_INTERVAL generations, which bounds how much
+ * has to be replayed to reach any kept generation. Engines that can't list
+ * their changes only get a keyframe every KEYFRAME_INTERVAL generations, what
+ * lies between is stepped again.
+ *
+ * Only for the thread that steps.
+ */
+class Journal {
+    static final int KEYFRAME_INTERVAL = 1024;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int RECORD_BYTES = 17;
+
+    private final int capacity;
+    private byte[] ring = new byte[INITIAL_CAPACITY];
+    private long head = 0;
+
+    // records, oldest first, as ring offsets, the generation they lead to and whether they are keyframes
+    private long[] starts = new long[64];
+    private long[] generations = new long[64];
+    private boolean[] keyframes = new boolean[64];
+    private int first = 0, count = 0;
+
+    // record the engine is at, and whether it stepped past it without a record
+    private int position = -1;
+    private boolean ahead = false;
+    private boolean dirty = false;
+    private boolean listing = true;
+    private int backoff = 0;
+
+    private int lastKeyframe = -1;
+    private long keyframeBytes, deltaBytes;
+
+    private final RowEncoder rows = new RowEncoder();
+    private long readAt;
+
+    private WorldSnapshot snapshot;
+
+    Journal(long budget) {
+        capacity = Integer.highestOneBit((int) Math.max(INITIAL_CAPACITY, Math.min(budget, 1 << 30)));
+    }
+
+    /* Cells of `engine` are about to be set by hand, so the next record has to be a keyframe */
+    void edited(LifeEngine engine) {
+        // an engine that stepped on without records keeps the state the edits undo to
+        if (ahead && !dirty) keyframe(engine, engine.getGeneration());
+        dirty = true;
+    }
+
+    /* Bytes held by records and their index, out of the budget */
+    long getBytes() {
+        return (count == 0 ? 0 : head - start(0)) + (long) count * RECORD_BYTES;
+    }
+
+    /* Adds the current state of `engine`, unless it is the one recorded last; records after a rewound one are dropped */
+    void record(LifeEngine engine) {
+        final long generation = engine.getGeneration();
+        if (!dirty && count > 0 && !ahead && generation == generation(position)) return;
+
+        truncate();
+
+        if (backoff > 0) {
+            backoff--;
+            ahead = true;
+            return;
+        }
+
+        final boolean recent = !dirty && count > 0 && generation > generation(position)
+                               && generation - generation(lastKeyframe) < KEYFRAME_INTERVAL;
+        if (!listing && recent) {
+            ahead = true;
+            return;
+        }
+
+        if (recent && !ahead && generation == generation(position) + 1 && deltaBytes <= Math.max(4 * keyframeBytes, capacity / 64)) {
+            rows.begin();
+            listing = engine.forEachChange(rows);
+
+            if (listing && makeRoom(rows.length, lastKeyframe)) {
+                append(generation, false);
+                return;
+            }
+            if (!listing) {
+                ahead = true;
+                return;
+            }
+        }
+
+        keyframe(engine, generation);
+    }
+
+    /* Takes back the last record, true unless there is nothing before it */
+    boolean back(LifeEngine engine) {
+        if (count == 0) return false;
+
+        if (ahead) restore(position, engine);
+        else if (position == 0) return false;
+        else if (keyframes[slot(position)]) restore(position - 1, engine);
+        else {
+            apply(position, engine);
+            position--;
+            engine.setGeneration(generation(position));
+        }
+
+        return true;
+    }
+
+    /*
+     * Brings `engine` to the last record at or before `generation`, or the
+     * oldest one. Deltas are undone one by one when that is shorter than
+     * replaying them from a keyframe.
+     */
+    void seek(LifeEngine engine, long generation) {
+        if (count == 0) return;
+
+        int r = position;
+        while (r > 0 && generation(r) > generation) r--;
+        if (r == position && !ahead) return;
+
+        int k = r;
+        while (!keyframes[slot(k)]) k--;
+
+        boolean undo = !ahead && position - r <= r - k;
+        for (int i = position; undo && i > r; i--) undo = !keyframes[slot(i)];
+
+        if (!undo) {
+            restore(r, engine);
+            return;
+        }
+
+        for (int i = position; i > r; i--) apply(i, engine);
+        position = r;
+        engine.setGeneration(generation(r));
+    }
+
+    private void keyframe(LifeEngine engine, long generation) {
+        if (snapshot == null) snapshot = engine.newSnapshot();
+        engine.copyTo(snapshot);
+
+        rows.begin();
+        try {
+            rows.putTiles(snapshot);
+        }
+        catch (IOException err) {
+            throw new IllegalStateException(err);
+        }
+
+        dirty = false;
+        if (makeRoom(rows.length, -1)) {
+            append(generation, true);
+            return;
+        }
+
+        // the world alone is over the budget, try again later rather than copy it every step
+        System.err.printf("Rewind history can't hold generation %d in %d bytes\n", generation, capacity);
+        count = 0;
+        position = -1;
+        lastKeyframe = -1;
+        backoff = KEYFRAME_INTERVAL;
+        ahead = true;
+    }
+
+    /* Restores record `r` from the keyframe before it */
+    private void restore(int r, LifeEngine engine) {
+        int k = r;
+        while (!keyframes[slot(k)]) k--;
+
+        for (int i = k; i <= r; i++) apply(i, engine);
+        engine.setGeneration(generation(r));
+
+        position = r;
+        ahead = false;
+    }
+
+    /* Xors the rows of record `i` into `engine`, which undoes as well as redoes a delta */
+    private void apply(int i, LifeEngine engine) {
+        if (keyframes[slot(i)]) engine.clear();
+
+        final long end = end(i);
+        long x = 0, y = 0;
+
+        for (readAt = start(i); readAt < end; ) {
+            y += unzigzag(read());
+            x += unzigzag(read()) << 6;
+
+            int shift = ring[(int) (readAt++ & (ring.length - 1))];
+            if (shift == RowEncoder.RAW) engine.xorRow(x, y, readLong());
+            else engine.xorRow(x, y, (read() << 1 | 1) << shift);
+        }
+    }
+
+    private long read() {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = ring[(int) (readAt++ & (ring.length - 1))];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private long readLong() {
+        long v = 0;
+        for (int i = 0; i < 64; i += 8) v |= (ring[(int) (readAt++ & (ring.length - 1))] & 0xFFL) << i;
+        return v;
+    }
+
+    private static long unzigzag(long v) {
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    /* Makes room for a record of `bytes`, dropping the oldest groups but not the one holding record `keep` */
+    private boolean makeRoom(int bytes, int keep) {
+        while (getBytes() + bytes + RECORD_BYTES > capacity) {
+            int next = 1;
+            while (next < count && !keyframes[slot(next)]) next++;
+            if (count == 0 || keep >= 0 && keep < next) return false;
+
+            drop(next);
+        }
+
+        while (head + bytes - (count == 0 ? head : start(0)) > ring.length) grow();
+        return true;
+    }
+
+    private void drop(int n) {
+        first = (first + n) & (starts.length - 1);
+        count -= n;
+        position -= n;
+        lastKeyframe -= n;
+    }
+
+    private void grow() {
+        byte[] bigger = new byte[ring.length * 2];
+        if (count > 0) copy(ring, start(0), bigger, start(0), (int) (head - start(0)));
+        ring = bigger;
+    }
+
+    private void append(long generation, boolean keyframe) {
+        if (count == starts.length) {
+            long[] s = new long[count * 2], g = new long[count * 2];
+            boolean[] k = new boolean[count * 2];
+
+            for (int i = 0; i < count; i++) {
+                s[i] = start(i);
+                g[i] = generation(i);
+                k[i] = keyframes[slot(i)];
+            }
+
+            starts = s;
+            generations = g;
+            keyframes = k;
+            first = 0;
+        }
+
+        final int s = slot(count++);
+        starts[s] = head;
+        generations[s] = generation;
+        keyframes[s] = keyframe;
+
+        copy(rows.bytes, 0, ring, head, rows.length);
+        head += rows.length;
+        position = count - 1;
+        ahead = false;
+
+        if (keyframe) {
+            lastKeyframe = position;
+            keyframeBytes = rows.length;
+            deltaBytes = 0;
+        }
+        else deltaBytes += rows.length;
+    }
+
+    /* Drops the records after the current one, which a rewind left behind */
+    private void truncate() {
+        if (position == count - 1) return;
+
+        head = start(position + 1);
+        count = position + 1;
+
+        lastKeyframe = position;
+        while (!keyframes[slot(lastKeyframe)]) lastKeyframe--;
+
+        keyframeBytes = end(lastKeyframe) - start(lastKeyframe);
+        deltaBytes = head - end(lastKeyframe);
+    }
+
+    /* Copies `n` bytes between arrays used as rings, offsets are masked by each one's length */
+    private static void copy(byte[] src, long from, byte[] dst, long to, int n) {
+        while (n > 0) {
+            int s = (int) (from & (src.length - 1)), d = (int) (to & (dst.length - 1));
+            int run = Math.min(n, Math.min(src.length - s, dst.length - d));
+
+            System.arraycopy(src, s, dst, d, run);
+            from += run;
+            to += run;
+            n -= run;
+        }
+    }
+
+    private int slot(int i) {
+        return (first + i) & (starts.length - 1);
+    }
+
+    private long start(int i) {
+        return starts[slot(i)];
+    }
+
+    private long end(int i) {
+        return i + 1 < count ? start(i + 1) : head;
+    }
+
+    private long generation(int i) {
+        return generations[slot(i)];
+    }
+}
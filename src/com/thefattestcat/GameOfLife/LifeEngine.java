@@ -0,0 +1,106 @@
+package com.thefattestcat.GameOfLife;
+
+/* Storage and stepping of cells behind CellWorld */
+interface LifeEngine {
+    interface ChangeVisitor {
+        void change(long x, long y, long mask);
+    }
+
+    /* Side of the square world in cells, 0 when the world has no border */
+    int getSize();
+
+    Rule getRule();
+
+    boolean get(long x, long y);
+
+    void flip(long x, long y);
+
+    /* Overwrites the 64x64 tile (tx, ty), laid out like WorldSnapshot.forEachTile, cells past the border are skipped */
+    default void setTile(long tx, long ty, long[] rows) {
+        final int height = getSize() == 0 ? 64 : (int) Math.max(0, Math.min(64, getSize() - ty * 64));
+        final int width = getSize() == 0 ? 64 : (int) Math.max(0, Math.min(64, getSize() - tx * 64));
+
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                long x = tx * 64 + j, y = ty * 64 + i;
+                if (get(x, y) != ((rows[i] >>> j & 1) != 0)) flip(x, y);
+            }
+        }
+    }
+
+    /* Brings `length` cells from (x, y) to the right alive or dead */
+    default void setRun(long x, long y, long length, boolean alive) {
+        for (long i = x; i < x + length; i++) {
+            if (get(i, y) != alive) flip(i, y);
+        }
+    }
+
+    /* 64 cells from (x, y) to the right, x a multiple of 64, bit i is the cell x + i; (x, y) must be in the world */
+    default long getRow(long x, long y) {
+        final int n = getSize() == 0 ? 64 : (int) Math.min(64, getSize() - x);
+
+        long row = 0;
+        for (int i = 0; i < n; i++) {
+            if (get(x + i, y)) row |= 1L << i;
+        }
+
+        return row;
+    }
+
+    /* Flips the cells of `mask` among the 64 from (x, y) to the right, x a multiple of 64 */
+    default void xorRow(long x, long y, long mask) {
+        for (; mask != 0; mask &= mask - 1) flip(x + Long.numberOfTrailingZeros(mask), y);
+    }
+
+    void step();
+
+    /* Hands the cells changed by the last step to `v` as xorRow() arguments, false when the engine doesn't list them */
+    default boolean forEachChange(ChangeVisitor v) {
+        return false;
+    }
+
+    /* Whether getHash() is kept up to date */
+    default boolean hasHash() {
+        return false;
+    }
+
+    /* XOR of the Zobrist keys of the non-empty 64-cell rows (or cells), updated with every change */
+    default long getHash() {
+        return 0;
+    }
+
+    /* Cells changed by the last step, -1 for engines that don't count them */
+    default long getChangedCells() {
+        return -1;
+    }
+
+    /* Part of the world the last step swept whole rather than word by word, -1 for engines that don't choose */
+    default double getDenseFraction() {
+        return -1;
+    }
+
+    /* Advances the world by 2^log2 generations */
+    void jump(int log2);
+
+    void clear();
+
+    long getPopulation();
+
+    long getGeneration();
+
+    /* Continues the count from `generation`, for restoring a saved world */
+    void setGeneration(long generation);
+
+    /* Fills `bounds` with minX, minY, maxX, maxY of the live cells, false when there are none */
+    boolean getBounds(long[] bounds);
+
+    /* Widens `box` by the cells changed since the last call, engines that don't track changes cover everything */
+    default void collectChanged(long[] box) {
+        Util.widenBox(box, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    WorldSnapshot newSnapshot();
+
+    /* Copies the current state into `s`, which came from newSnapshot() */
+    void copyTo(WorldSnapshot s);
+}
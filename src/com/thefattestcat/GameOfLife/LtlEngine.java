@@ -0,0 +1,399 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.Arrays;
+
+/*
+ * Fixed square world for Larger than Life rules, one byte of state per cell.
+ * Neighbourhoods are counted a row at a time from the one above: the count of
+ * a cell changes by the cells entering at the bottom of its neighbourhood and
+ * leaving at the top. Those come from rolling sums of the last rows, box sums
+ * for the Moore square and diagonal prefix sums for the von Neumann diamond,
+ * so a generation costs the same per cell for any radius.
+ */
+class LtlEngine implements LifeEngine {
+    private static final byte ALIVE = 1;
+
+    private final Rule rule;
+    private final int size, radius, states;
+
+    private final byte[] cells;
+    private final Counter counter;
+    private int[] row = new int[0];
+
+    private long generation = 0;
+    private long population = 0;
+    private long changedCells = 0;
+    private long hash = 0;
+
+    // cells that aren't dead, which bounds what a step has to look at
+    private final long[] active = new long[4];
+    private final long[] changed = new long[4];
+
+    public LtlEngine(int size, Rule rule) {
+        this.rule = rule;
+        this.size = size;
+        radius = rule.getRadius();
+        states = rule.getStates();
+
+        cells = new byte[size * size];
+        counter = rule.isVonNeumann() ? new DiamondCounter(radius) : new SquareCounter(radius);
+
+        Util.clearBox(active);
+        Util.clearBox(changed);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public boolean get(long x, long y) {
+        if (x < 0 || x >= size || y < 0 || y >= size) return false;
+        return cells[(int) y * size + (int) x] == ALIVE;
+    }
+
+    /* Live cells die at once, dying and dead ones come alive */
+    @Override
+    public void flip(long x, long y) {
+        if (x < 0 || x >= size || y < 0 || y >= size) return;
+
+        final int i = (int) y * size + (int) x;
+        final byte old = cells[i];
+
+        if (old == ALIVE) {
+            cells[i] = 0;
+            population--;
+        }
+        else {
+            cells[i] = ALIVE;
+            population++;
+            Util.widenBox(active, x, y, x, y);
+        }
+
+        hash ^= Util.zobrist(i, old) ^ Util.zobrist(i, cells[i]);
+        Util.widenBox(changed, x, y, x, y);
+    }
+
+    @Override
+    public void setRun(long x, long y, long length, boolean alive) {
+        if (y < 0 || y >= size) return;
+
+        for (long i = Math.max(0, x), end = Math.min(size, x + length); i < end; i++) {
+            if ((cells[(int) y * size + (int) i] == ALIVE) != alive) flip(i, y);
+        }
+    }
+
+    @Override
+    public void step() {
+        generation++;
+        changedCells = 0;
+        if (Util.isEmptyBox(active)) return;
+
+        // cells further than the radius from anything alive or dying stay dead
+        final int x0 = (int) Math.max(0, active[0] - radius), x1 = (int) Math.min(size - 1, active[2] + radius);
+        final int y0 = (int) Math.max(0, active[1] - radius), y1 = (int) Math.min(size - 1, active[3] + radius);
+        final int width = x1 - x0 + 1;
+
+        final int[] count = counter.begin(width);
+        if (row.length < width) row = new int[width];
+
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        long cx0 = Long.MAX_VALUE, cx1 = Long.MIN_VALUE, cy0 = Long.MAX_VALUE, cy1 = Long.MIN_VALUE;
+
+        for (int y = y0 - radius - 1; y <= y1; y++) {
+            // rows below y + radius haven't been counted yet, so they can't be overwritten before they are
+            final int in = y + radius;
+            if (in >= y0 && in <= y1) loadRow(in, x0, width);
+            else Arrays.fill(row, 0);
+
+            counter.advance(row, count);
+            if (y < y0) continue;
+
+            final int base = y * size + x0;
+            for (int i = 0; i < width; i++) {
+                final int s = cells[base + i];
+                final int next;
+
+                if (s == 0) next = count[i] != 0 && rule.isBirth(count[i]) ? ALIVE : 0;
+                else if (s == ALIVE) next = rule.isSurvival(count[i] - 1) ? ALIVE : states > 2 ? 2 : 0;
+                else next = s + 1 < states ? s + 1 : 0;
+
+                if (next != s) {
+                    cells[base + i] = (byte) next;
+                    changedCells++;
+                    hash ^= Util.zobrist(base + i, s) ^ Util.zobrist(base + i, next);
+                    if (s == ALIVE) population--;
+                    else if (next == ALIVE) population++;
+
+                    cx0 = Math.min(cx0, x0 + i);
+                    cx1 = Math.max(cx1, x0 + i);
+                    cy0 = Math.min(cy0, y);
+                    cy1 = y;
+                }
+
+                if (next != 0) {
+                    minX = Math.min(minX, x0 + i);
+                    maxX = Math.max(maxX, x0 + i);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+
+        active[0] = minX;
+        active[1] = minY;
+        active[2] = maxX;
+        active[3] = maxY;
+
+        if (cx0 <= cx1) Util.widenBox(changed, cx0, cy0, cx1, cy1);
+    }
+
+    /* Keyed per cell by its state, dying cells count too */
+    @Override
+    public boolean hasHash() {
+        return true;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    private void loadRow(int y, int x0, int width) {
+        final int base = y * size + x0;
+        for (int i = 0; i < width; i++) row[i] = cells[base + i] == ALIVE ? 1 : 0;
+    }
+
+    @Override
+    public void jump(int log2) {
+        for (long i = 1L << log2; i > 0; i--) step();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, (byte) 0);
+
+        population = 0;
+        generation = 0;
+        hash = 0;
+        Util.clearBox(active);
+        Util.widenBox(changed, 0, 0, size - 1, size - 1);
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public boolean getBounds(long[] bounds) {
+        Util.clearBox(bounds);
+        if (Util.isEmptyBox(active)) return false;
+
+        for (int y = (int) active[1]; y <= active[3]; y++) {
+            for (int x = (int) active[0]; x <= active[2]; x++) {
+                if (cells[y * size + x] == ALIVE) Util.widenBox(bounds, x, y, x, y);
+            }
+        }
+
+        return !Util.isEmptyBox(bounds);
+    }
+
+    @Override
+    public void collectChanged(long[] box) {
+        if (Util.isEmptyBox(changed)) return;
+
+        Util.widenBox(box, changed[0], changed[1], changed[2], changed[3]);
+        Util.clearBox(changed);
+    }
+
+    /* Snapshots hold the live cells only, dying ones are drawn and saved as dead */
+    @Override
+    public WorldSnapshot newSnapshot() {
+        return new GridSnapshot(size, (size + 63) >>> 6);
+    }
+
+    @Override
+    public void copyTo(WorldSnapshot s) {
+        GridSnapshot gs = (GridSnapshot) s;
+        Arrays.fill(gs.words, 0);
+
+        if (!Util.isEmptyBox(active)) {
+            for (int y = (int) active[1]; y <= active[3]; y++) {
+                final int base = y * size, words = y * gs.wordsPerRow;
+
+                for (int x = (int) active[0]; x <= active[2]; x++) {
+                    if (cells[base + x] == ALIVE) gs.words[words + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+
+        gs.generation = generation;
+        gs.population = population;
+    }
+}
+
+/*
+ * Neighbourhood counts of one row of cells from the one above. advance()
+ * takes the live cells (1 or 0) of the row `radius` below the next row to
+ * count, and turns the previous row's counts into that row's, centres included.
+ */
+abstract class Counter {
+    protected final int radius;
+    protected int width;
+
+    Counter(int radius) {
+        this.radius = radius;
+    }
+
+    /* Starts a pass over rows `width` cells wide, every count starts at zero */
+    abstract int[] begin(int width);
+
+    abstract void advance(int[] row, int[] count);
+}
+
+/* Moore square: each row's sums over 2r + 1 cells are kept for the 2r + 2 rows still in reach */
+class SquareCounter extends Counter {
+    private int[][] sums = new int[0][];
+    private int[] count = new int[0];
+    private int next;
+
+    SquareCounter(int radius) {
+        super(radius);
+    }
+
+    @Override
+    int[] begin(int width) {
+        this.width = width;
+
+        if (count.length < width) {
+            sums = new int[2 * radius + 2][width];
+            count = new int[width];
+        }
+        else {
+            for (final int[] s : sums) Arrays.fill(s, 0, width, 0);
+            Arrays.fill(count, 0, width, 0);
+        }
+
+        next = 0;
+        return count;
+    }
+
+    @Override
+    void advance(int[] row, int[] count) {
+        final int[] entering = sums[next];
+        final int[] leaving = sums[(next + 1) % sums.length];
+        next = (next + 1) % sums.length;
+
+        // sliding sum over [i - r, i + r] of the entering row
+        int sum = 0;
+        for (int i = 0; i < Math.min(radius, width); i++) sum += row[i];
+
+        for (int i = 0; i < width; i++) {
+            if (i + radius < width) sum += row[i + radius];
+            entering[i] = sum;
+            if (i - radius >= 0) sum -= row[i - radius];
+        }
+
+        for (int i = 0; i < width; i++) count[i] += entering[i] - leaving[i];
+    }
+}
+
+/*
+ * Von Neumann diamond: moving down a row adds the V of cells along its lower
+ * edges and drops the upside down V just above its top. Both are pairs of
+ * diagonal runs, read off prefix sums along the two diagonals, which are kept
+ * for the 2r + 3 rows still in reach and padded by r + 1 cells each side.
+ */
+class DiamondCounter extends Counter {
+    private int[][] down = new int[0][], up = new int[0][];
+    private int[] count = new int[0];
+    private int next;
+
+    DiamondCounter(int radius) {
+        super(radius);
+    }
+
+    @Override
+    int[] begin(int width) {
+        this.width = width;
+        final int padded = width + 2 * (radius + 1);
+
+        if (count.length < width) {
+            down = new int[2 * radius + 3][padded];
+            up = new int[2 * radius + 3][padded];
+            count = new int[width];
+        }
+        else {
+            for (final int[] d : down) Arrays.fill(d, 0, padded, 0);
+            for (final int[] u : up) Arrays.fill(u, 0, padded, 0);
+            Arrays.fill(count, 0, width, 0);
+        }
+
+        next = 0;
+        return count;
+    }
+
+    /* Prefix sums of the row `k` rows back, k = 0 is the row passed to the last advance() */
+    private int[] down(int k) {
+        return down[Math.floorMod(next - 1 - k, down.length)];
+    }
+
+    private int[] up(int k) {
+        return up[Math.floorMod(next - 1 - k, up.length)];
+    }
+
+    @Override
+    void advance(int[] row, int[] count) {
+        final int p = radius + 1, r = radius;
+        final int padded = width + 2 * p;
+
+        // down[x] sums the row's cell at x and the diagonal up-left of it, up[x] the one up-right
+        final int[] d = down[next], u = up[next];
+        final int[] pd = down(0), pu = up(0);
+        next = (next + 1) % down.length;
+
+        for (int x = 0; x < padded; x++) {
+            int cell = x >= p && x < p + width ? row[x - p] : 0;
+            d[x] = cell + (x > 0 ? pd[x - 1] : 0);
+            u[x] = cell + (x + 1 < padded ? pu[x + 1] : 0);
+        }
+
+        // the new bottom row is y + r for centre row y, the V spans rows y..y + r and the dropped one y - 1 - r..y - 1
+        final int[] d0 = down(0), u0 = up(0);
+        final int[] d1 = down(r + 1), u1 = up(r + 1);
+        final int[] d2 = down(2 * r + 2), u2 = up(2 * r + 2);
+        final int[] apex = down(2 * r + 1);
+
+        for (int i = 0; i < width; i++) {
+            final int x = i + p;
+
+            // both arms share the tip, which is taken out once
+            int entering = d0[x] - d1[x - r - 1] + u0[x] - u1[x + r + 1] - row[i];
+            int leaving = u1[x - r] - u2[x + 1] + d1[x + r] - d2[x - 1] - (apex[x] - d2[x - 1]);
+
+            count[i] += entering - leaving;
+        }
+    }
+}
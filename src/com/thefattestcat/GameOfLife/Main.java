@@ -1,14 +1,37 @@
 package com.thefattestcat.GameOfLife;
 
+import java.io.File;
+import java.io.IOException;
+
 public class Main {
     public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && (args[0].equals("headless") || args[0].equals("bench") || args[0].equals("search")
+                                || args[0].equals("stats") || args[0].equals("serve"))) {
+            System.setProperty("java.awt.headless", "true");
+            Settings.loadFromFile("settings.cfg");
+
+            if (args[0].equals("headless")) Headless.run(args);
+            else if (args[0].equals("search")) SoupSearch.run(args);
+            else if (args[0].equals("stats")) statsToCsv(args);
+            else if (args[0].equals("serve")) SimulationServer.run(args);
+            else Benchmark.run(args);
+            return;
+        }
+
         Settings.loadFromFile("settings.cfg");
 
+        // a viewer draws what a server sends, it doesn't simulate, checkpoint or keep stats
+        final boolean viewing = args.length > 0 && args[0].equals("view");
+        CellWorld cellWorld = viewing ? RemoteWorld.connect(args.length > 1 ? args[1] : Integer.toString(DeltaFrame.DEFAULT_PORT))
+                                      : createWorld(Settings.getCheckpointFile());
+        if (cellWorld == null) return;
+        if (!viewing && !Settings.getStatsFile().isEmpty()) cellWorld.openStats(Settings.getStatsFile());
+
         Window window = new Window(Settings.getWindowSize());
-        CellWorld cellWorld = new CellWorld();
 
         WorldRenderer worldRenderer = window.getWorldRenderer();
         worldRenderer.setCellWorld(cellWorld);
+        cellWorld.getMetrics().register();
 
         Camera camera = new Camera();
 
@@ -16,11 +39,44 @@ public class Main {
         window.setVisible(true);
 
         cellWorld.setPaused(true);
+        cellWorld.start();
 
         while (window.isVisible()) {
-            if (!cellWorld.isPaused()) worldRenderer.revalidate();
-            worldRenderer.repaint();
+            worldRenderer.requestRefresh();
             Thread.sleep(Settings.getRenderTime());
         }
+
+        cellWorld.setPaused(true);
+        if (!viewing && !Settings.getCheckpointFile().isEmpty()) cellWorld.requestCheckpoint(Settings.getCheckpointFile()).join();
+        cellWorld.closeStats();
+        System.exit(0);
+    }
+
+    /* Prints a binary stats file as CSV */
+    private static void statsToCsv(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: stats <file>");
+            return;
+        }
+
+        try {
+            StatsStream.toCsv(args[1], System.out);
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot read stats `%s`: %s\n", args[1], err.getMessage());
+        }
+    }
+
+    /* World restored from the checkpoint when there is one, a new one otherwise */
+    private static CellWorld createWorld(String checkpoint) {
+        if (checkpoint.isEmpty() || !new File(checkpoint).exists()) return new CellWorld(Settings.getWorldSize());
+
+        try {
+            return new CellWorld(Checkpoint.load(checkpoint, Settings.getEngine(), Settings.getWorldSize()));
+        }
+        catch (IOException | RuntimeException err) {
+            System.err.printf("Cannot restore checkpoint `%s`: %s\n", checkpoint, err.getMessage());
+            return new CellWorld(Settings.getWorldSize());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.thefattestcat.GameOfLife;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counters of a world and the renderer drawing it, cheap enough to be always
+ * on: each is written by one thread only (steps by the simulation, frames by
+ * the event thread) and read from anywhere, over JMX or by the overlay. Plain
+ * fields are published by the volatile store that follows them, readers may
+ * see them a step late. Times go to log-linear histograms, so percentiles
+ * cost nothing to record, and allocation is sampled every few steps.
+ */
+class Metrics implements MetricsMBean {
+    private static final long RATE_WINDOW = 1_000_000_000L;
+    private static final int ALLOCATION_SAMPLE = 16;
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final Histogram stepTimes = new Histogram();
+    private final Histogram frameTimes = new Histogram();
+
+    private long changedCells = -1, allocatedBytes = -1, allocationStart = -1, historyBytes;
+    private double denseFraction = -1;
+    private volatile long steps;
+
+    private volatile long generation, population, skippedGenerations, period;
+    private volatile long frames, droppedFrames;
+
+    // generations per second over the last window of about a second
+    private double rate;
+    private volatile long rateTime;
+    private long windowStart = System.nanoTime(), windowGenerations;
+
+    Metrics() {
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        threads = t instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) t).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) t : null;
+    }
+
+    /* Makes the metrics visible over JMX as `com.thefattestcat.GameOfLife:type=Metrics` */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("com.thefattestcat.GameOfLife:type=Metrics"));
+        }
+        catch (JMException err) {
+            System.err.printf("Cannot register metrics: %s\n", err.getMessage());
+        }
+    }
+
+    /* Called by the simulation thread before a step, returns what endStep() takes */
+    long beginStep() {
+        if (threads != null && steps % ALLOCATION_SAMPLE == 0) allocationStart = threads.getCurrentThreadAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    /* After a step that began at `start`, changed `changed` cells and swept `dense` of the world whole */
+    void endStep(long start, long changed, double dense) {
+        final long now = System.nanoTime();
+        stepTimes.record(now - start);
+
+        if (allocationStart >= 0) {
+            allocatedBytes = threads.getCurrentThreadAllocatedBytes() - allocationStart;
+            allocationStart = -1;
+        }
+
+        changedCells = changed;
+        denseFraction = dense;
+        countGenerations(1, now);
+        steps++;
+    }
+
+    /* Generations moved by a jump, which don't go to the step times */
+    void recordGenerations(long n) {
+        countGenerations(n, System.nanoTime());
+    }
+
+    private void countGenerations(long n, long now) {
+        windowGenerations += n;
+
+        if (now - windowStart >= RATE_WINDOW) {
+            rate = windowGenerations * 1e9 / (now - windowStart);
+            rateTime = now;
+            windowStart = now;
+            windowGenerations = 0;
+        }
+    }
+
+    /* State of the generation just published */
+    void recordGeneration(long generation, long population) {
+        this.generation = generation;
+        this.population = population;
+    }
+
+    /* Period the world settled into, 0 when it hasn't or was edited since */
+    void recordPeriod(long period) {
+        this.period = period;
+    }
+
+    void recordHistory(long bytes) {
+        historyBytes = bytes;
+    }
+
+    void recordSkippedGeneration() {
+        skippedGenerations++;
+    }
+
+    /* One frame that took `nanos` to draw, from the event thread */
+    void recordFrame(long nanos) {
+        frameTimes.record(nanos);
+        frames++;
+    }
+
+    void recordDroppedFrame() {
+        droppedFrames++;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    /* Falls to 0 once no window has finished for a while, as when paused */
+    @Override
+    public double getGenerationsPerSecond() {
+        final long t = rateTime;
+        return System.nanoTime() - t > 2 * RATE_WINDOW ? 0 : rate;
+    }
+
+    @Override
+    public long getSteps() {
+        return steps;
+    }
+
+    @Override
+    public double getStepTimeMean() {
+        return stepTimes.mean() / 1e6;
+    }
+
+    @Override
+    public double getStepTimeP50() {
+        return stepTimes.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getStepTimeP99() {
+        return stepTimes.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getStepTimeMax() {
+        return stepTimes.max() / 1e6;
+    }
+
+    @Override
+    public String[] getStepTimeHistogram() {
+        return stepTimes.describe();
+    }
+
+    @Override
+    public long getChangedCells() {
+        return steps == 0 ? -1 : changedCells;
+    }
+
+    @Override
+    public double getDenseFraction() {
+        return steps == 0 ? -1 : denseFraction;
+    }
+
+    /* From the last sampled step */
+    @Override
+    public long getAllocatedBytesPerGeneration() {
+        return steps == 0 ? -1 : allocatedBytes;
+    }
+
+    @Override
+    public long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public double getFrameTimeMean() {
+        return frameTimes.mean() / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeP99() {
+        return frameTimes.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeMax() {
+        return frameTimes.max() / 1e6;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public long getSkippedGenerations() {
+        return skippedGenerations;
+    }
+
+    @Override
+    public long getPeriod() {
+        return period;
+    }
+
+    @Override
+    public long getHistoryBytes() {
+        return historyBytes;
+    }
+}
+
+/*
+ * Counts of nanosecond values in buckets of a quarter of a power of two, so
+ * any percentile is off by under 25%. One thread records, any thread reads.
+ */
+class Histogram {
+    private static final int BUCKETS = 256;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private long sum, max;
+    private volatile long count;
+
+    void record(long nanos) {
+        int b = bucketOf(Math.max(0, nanos));
+        counts.lazySet(b, counts.get(b) + 1);
+
+        sum += nanos;
+        if (nanos > max) max = nanos;
+        count++;
+    }
+
+    double mean() {
+        long n = count;
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    long max() {
+        return count == 0 ? 0 : max;
+    }
+
+    /* Middle of the bucket holding the `q` quantile */
+    double percentile(double q) {
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++) n += counts.get(b);
+        if (n == 0) return 0;
+
+        long rank = (long) Math.ceil(q * n), seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= Math.max(1, rank)) return (lowerBound(b) + lowerBound(b + 1) - 1) / 2.0;
+        }
+
+        return max;
+    }
+
+    String[] describe() {
+        ArrayList<String> lines = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b++) {
+            long c = counts.get(b);
+            if (c != 0) lines.add((lowerBound(b + 1) - 1) + ":" + c);
+        }
+
+        return lines.toArray(new String[0]);
+    }
+
+    /* 0..3 are their own buckets, above that the top three bits of the value pick one */
+    static int bucketOf(long v) {
+        if (v < 4) return (int) v;
+
+        int log = 63 - Long.numberOfLeadingZeros(v);
+        return 4 * (log - 1) + (int) (v >>> (log - 2) & 3);
+    }
+
+    static long lowerBound(int b) {
+        if (b < 4) return b;
+
+        int log = b / 4 + 1;
+        return (long) (4 + b % 4) << (log - 2);
+    }
+}
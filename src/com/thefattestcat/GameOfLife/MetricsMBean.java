@@ -0,0 +1,52 @@
+package com.thefattestcat.GameOfLife;
+
+/* Attributes of a world's Metrics as seen over JMX, times in milliseconds */
+public interface MetricsMBean {
+    long getGeneration();
+
+    long getPopulation();
+
+    double getGenerationsPerSecond();
+
+    long getSteps();
+
+    double getStepTimeMean();
+
+    double getStepTimeP50();
+
+    double getStepTimeP99();
+
+    double getStepTimeMax();
+
+    /* Step times as `<upper bound in ns>:<count>` per non-empty bucket */
+    String[] getStepTimeHistogram();
+
+    /* Cells changed by the last step, -1 when the engine doesn't count them */
+    long getChangedCells();
+
+    /* Part of the world the last step swept whole rather than word by word, -1 when the engine doesn't choose */
+    double getDenseFraction();
+
+    /* Bytes allocated by the last step, -1 when the JVM can't tell */
+    long getAllocatedBytesPerGeneration();
+
+    long getFrames();
+
+    double getFrameTimeMean();
+
+    double getFrameTimeP99();
+
+    double getFrameTimeMax();
+
+    /* Render ticks skipped because the previous frame hadn't been drawn yet */
+    long getDroppedFrames();
+
+    /* Generations the renderer never showed because it was still busy with an older one */
+    long getSkippedGenerations();
+
+    /* Period the world settled into, 0 while it hasn't */
+    long getPeriod();
+
+    /* Bytes of rewind history kept */
+    long getHistoryBytes();
+}
@@ -0,0 +1,514 @@
+package com.thefattestcat.GameOfLife;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/*
+ * Fixed square world kept out of the Java heap, for sizes a long[] can't
+ * index or the collector shouldn't have to carry. Cells are bit-packed in
+ * 64x64 tiles of 64 longs, tile t being word column t % tilesX of row band
+ * t / tilesX, one after another in native memory and addressed by long
+ * index, so a 65536 x 65536 world takes 512 MB of it. Only tiles next to
+ * last generation's changes are stepped, in place: the new rows of a band
+ * wait on the heap until the band below has read the old ones. The heap
+ * holds a dozen bytes per tile and snapshots of the live tiles, which only
+ * recopy what changed since they were last filled.
+ */
+class OffHeapEngine implements LifeEngine {
+    private final int size;
+    private final Rule rule;
+    private final int tilesX, tilesY, tileCount;
+    private final long lastWordMask;
+    private final NativeWords words;
+
+    // tiles to step this generation and the next, one bit each
+    private long[] scheduled, nextScheduled;
+
+    private final int[] populations;
+    private long population = 0;
+
+    // version each tile and each band last changed at, snapshots take the tiles changed after theirs
+    private final long[] stamps, bandStamps;
+    private long version = 1;
+
+    // new rows of the band being stepped and of the one above it
+    private Pending current = new Pending(), above = new Pending();
+    private final long[] west = new long[66], centre = new long[66], east = new long[66];
+
+    // rows changed by the last step as tile << 6 | row, with xor masks
+    private long[] changeRows = new long[256], changeMasks = new long[256];
+    private int changeCount = 0;
+
+    private long generation = 0;
+    private long changedCells = 0;
+    private long hash = 0;
+    private final long[] changed = new long[4];
+
+    /* Allocates the whole world up front, IllegalArgumentException when it can't */
+    public OffHeapEngine(int size, Rule rule) {
+        if (size <= 0) throw new IllegalArgumentException("world size " + size + " isn't positive");
+
+        this.size = size;
+        this.rule = rule;
+        tilesX = (size + 63) >>> 6;
+        tilesY = tilesX;
+
+        final long tiles = (long) tilesX * tilesY;
+        if (tiles > Integer.MAX_VALUE - 64) throw new IllegalArgumentException("world of " + size + " has too many tiles");
+        tileCount = (int) tiles;
+
+        final int tail = size & 63;
+        lastWordMask = tail == 0 ? -1L : (1L << tail) - 1;
+
+        words = new NativeWords(tiles * 64);
+
+        scheduled = new long[(tileCount + 63) >>> 6];
+        nextScheduled = new long[scheduled.length];
+        populations = new int[tileCount];
+        stamps = new long[tileCount];
+        bandStamps = new long[tilesY];
+
+        Util.clearBox(changed);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    /* Bytes of native memory holding the cells */
+    public long getNativeBytes() {
+        return words.length() * 8;
+    }
+
+    @Override
+    public boolean get(long x, long y) {
+        if (x < 0 || x >= size || y < 0 || y >= size) return false;
+        return (words.get(index(x, y)) >>> (x & 63) & 1) != 0;
+    }
+
+    @Override
+    public void flip(long x, long y) {
+        xorRow(x & ~63L, y, 1L << (x & 63));
+    }
+
+    @Override
+    public void setRun(long x, long y, long length, boolean alive) {
+        for (long end = x + length; x < end; ) {
+            final int bit = (int) (x & 63);
+            final int n = (int) Math.min(64 - bit, end - x);
+            final long mask = (n == 64 ? -1L : (1L << n) - 1) << bit;
+
+            final long old = getRow(x & ~63L, y);
+            xorRow(x & ~63L, y, (alive ? ~old : old) & mask);
+
+            x += n;
+        }
+    }
+
+    @Override
+    public void setTile(long tx, long ty, long[] rows) {
+        if (tx < 0 || tx >= tilesX || ty < 0 || ty >= tilesY) return;
+
+        for (int i = 0; i < 64; i++) {
+            final long y = ty * 64 + i;
+            if (y < size) xorRow(tx * 64, y, getRow(tx * 64, y) ^ rows[i]);
+        }
+    }
+
+    @Override
+    public long getRow(long x, long y) {
+        return words.get(index(x, y));
+    }
+
+    @Override
+    public void xorRow(long x, long y, long mask) {
+        if (x < 0 || x >= size || y < 0 || y >= size) return;
+
+        final int t = tile(x, y), i = (int) (y & 63);
+        if (t % tilesX == tilesX - 1) mask &= lastWordMask;
+        if (mask == 0) return;
+
+        final long old = words.get((long) t << 6 | i);
+        rewrite(t, i, old, old ^ mask);
+        touched(t);
+        scheduleAround(t, mask, i == 0 ? mask : 0, i == 63 ? mask : 0);
+    }
+
+    @Override
+    public void step() {
+        final long[] s = scheduled;
+        scheduled = nextScheduled;
+        nextScheduled = s;
+
+        generation++;
+        changedCells = 0;
+        changeCount = 0;
+
+        int band = -2;
+        for (int w = 0; w < scheduled.length; w++) {
+            for (long bits = scheduled[w]; bits != 0; bits &= bits - 1) {
+                final int t = w << 6 | Long.numberOfTrailingZeros(bits);
+                final int b = t / tilesX;
+
+                if (b != band) {
+                    // a band is written once the one below it has read it, or right away when that one has nothing to step
+                    store(above);
+                    if (b > band + 1) store(current);
+
+                    final Pending p = above;
+                    above = current;
+                    current = p;
+                    band = b;
+                }
+
+                compute(t, current.add(t));
+            }
+            scheduled[w] = 0;
+        }
+
+        store(above);
+        store(current);
+    }
+
+    @Override
+    public boolean forEachChange(ChangeVisitor v) {
+        for (int i = 0; i < changeCount; i++) {
+            final int t = (int) (changeRows[i] >>> 6);
+            v.change((long) (t % tilesX) * 64, (long) (t / tilesX) * 64 + (changeRows[i] & 63), changeMasks[i]);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean hasHash() {
+        return true;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    @Override
+    public void jump(int log2) {
+        for (long i = 1L << log2; i > 0; i--) step();
+    }
+
+    @Override
+    public void clear() {
+        for (int t = 0; t < tileCount; t++) {
+            if (populations[t] == 0) continue;
+
+            for (int i = 0; i < 64; i++) words.set((long) t << 6 | i, 0);
+            populations[t] = 0;
+            touched(t);
+        }
+
+        Arrays.fill(scheduled, 0);
+        Arrays.fill(nextScheduled, 0);
+        changeCount = 0;
+
+        population = 0;
+        generation = 0;
+        hash = 0;
+        Util.widenBox(changed, 0, 0, size - 1, size - 1);
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public boolean getBounds(long[] bounds) {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        final long[] rows = new long[64];
+
+        for (int t = 0; t < tileCount; t++) {
+            if (populations[t] == 0) continue;
+
+            final long x = (long) (t % tilesX) * 64, y = (long) (t / tilesX) * 64;
+            words.read((long) t << 6, rows);
+
+            for (int i = 0; i < 64; i++) {
+                if (rows[i] == 0) continue;
+
+                minY = Math.min(minY, y + i);
+                maxY = Math.max(maxY, y + i);
+                minX = Math.min(minX, x + Long.numberOfTrailingZeros(rows[i]));
+                maxX = Math.max(maxX, x + 63 - Long.numberOfLeadingZeros(rows[i]));
+            }
+        }
+
+        if (minY == Long.MAX_VALUE) return false;
+
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = maxX;
+        bounds[3] = maxY;
+        return true;
+    }
+
+    @Override
+    public void collectChanged(long[] box) {
+        if (Util.isEmptyBox(changed)) return;
+
+        Util.widenBox(box, changed[0], changed[1], changed[2], changed[3]);
+        Util.clearBox(changed);
+    }
+
+    @Override
+    public WorldSnapshot newSnapshot() {
+        return new OffHeapSnapshot();
+    }
+
+    @Override
+    public void copyTo(WorldSnapshot s) {
+        final OffHeapSnapshot os = (OffHeapSnapshot) s;
+
+        for (int b = 0; b < tilesY; b++) {
+            if (bandStamps[b] <= os.version) continue;
+
+            for (int t = b * tilesX, end = t + tilesX; t < end; t++) {
+                if (stamps[t] <= os.version) continue;
+
+                final int tx = t - b * tilesX;
+                if (populations[t] == 0) {
+                    os.chunks.remove(tx, b);
+                    continue;
+                }
+
+                Chunk c = os.chunks.get(tx, b);
+                if (c == null) c = os.chunks.put(new Chunk(tx, b));
+                words.read((long) t << 6, c.cells);
+            }
+        }
+
+        // later changes get a version past the snapshot's
+        os.version = version++;
+        s.generation = generation;
+        s.population = population;
+    }
+
+    /* Next state of tile `t` into `out`, from the rows around it */
+    private void compute(int t, long[] out) {
+        final int tx = t % tilesX, b = t / tilesX;
+
+        load(t, centre);
+        if (tx > 0) load(t - 1, west);
+        else Arrays.fill(west, 0);
+        if (tx < tilesX - 1) load(t + 1, east);
+        else Arrays.fill(east, 0);
+
+        final long mask = tx == tilesX - 1 ? lastWordMask : -1L;
+        final int rows = Math.min(64, size - b * 64);
+
+        for (int i = 0; i < rows; i++) {
+            out[i] = rule.nextWord(
+                west[i],     centre[i],     east[i],
+                west[i + 1], centre[i + 1], east[i + 1],
+                west[i + 2], centre[i + 2], east[i + 2]
+            ) & mask;
+        }
+        for (int i = rows; i < 64; i++) out[i] = 0;
+    }
+
+    /* Rows of tile `t` into `rows` from 1, with the last row of the tile above at 0 and the first of the one below at 65 */
+    private void load(int t, long[] rows) {
+        words.read((long) t << 6, rows, 1, 64);
+
+        final int b = t / tilesX;
+        rows[0] = b > 0 ? words.get((long) (t - tilesX) << 6 | 63) : 0;
+        rows[65] = b < tilesY - 1 ? words.get((long) (t + tilesX) << 6) : 0;
+    }
+
+    /* Writes the stepped tiles of `p` and schedules around what changed */
+    private void store(Pending p) {
+        for (int k = 0; k < p.count; k++) {
+            final int t = p.tiles[k];
+            final long[] rows = p.rows[k];
+
+            long columns = 0, north = 0, south = 0;
+            for (int i = 0; i < 64; i++) {
+                final long old = words.get((long) t << 6 | i);
+                final long diff = old ^ rows[i];
+                if (diff == 0) continue;
+
+                rewrite(t, i, old, rows[i]);
+                addChange((long) t << 6 | i, diff);
+                changedCells += Long.bitCount(diff);
+
+                columns |= diff;
+                if (i == 0) north = diff;
+                if (i == 63) south = diff;
+            }
+
+            if (columns != 0) {
+                touched(t);
+                scheduleAround(t, columns, north, south);
+            }
+        }
+
+        p.count = 0;
+    }
+
+    /* Sets row `i` of tile `t` from `old` to `now` and keeps the counts and hash */
+    private void rewrite(int t, int i, long old, long now) {
+        final long w = (long) t << 6 | i;
+        words.set(w, now);
+
+        final int d = Long.bitCount(now) - Long.bitCount(old);
+        populations[t] += d;
+        population += d;
+        hash ^= Util.zobrist(w, old) ^ Util.zobrist(w, now);
+    }
+
+    /* Tile `t` changed: stamps it for snapshots and widens the changed box */
+    private void touched(int t) {
+        final int b = t / tilesX;
+        stamps[t] = version;
+        bandStamps[b] = version;
+
+        final long x = (long) (t - b * tilesX) * 64, y = (long) b * 64;
+        Util.widenBox(changed, x, y, x + 63, y + 63);
+    }
+
+    /*
+     * Schedules tile `t` and the neighbours its changes reach: `columns` has
+     * the changed cells of all rows or'ed together, `north` and `south` those
+     * of its first and last row.
+     */
+    private void scheduleAround(int t, long columns, long north, long south) {
+        final int tx = t % tilesX, b = t / tilesX;
+
+        final int fromX = (columns & 1L) != 0 && tx > 0 ? -1 : 0;
+        final int toX = (columns & Long.MIN_VALUE) != 0 && tx < tilesX - 1 ? 1 : 0;
+        final int fromY = north != 0 && b > 0 ? -1 : 0;
+        final int toY = south != 0 && b < tilesY - 1 ? 1 : 0;
+
+        for (int dy = fromY; dy <= toY; dy++) {
+            for (int dx = fromX; dx <= toX; dx++) {
+                final int n = t + dy * tilesX + dx;
+                nextScheduled[n >>> 6] |= 1L << n;
+            }
+        }
+    }
+
+    private void addChange(long row, long mask) {
+        if (changeCount == changeRows.length) {
+            changeRows = Arrays.copyOf(changeRows, changeCount * 2);
+            changeMasks = Arrays.copyOf(changeMasks, changeCount * 2);
+        }
+
+        changeRows[changeCount] = row;
+        changeMasks[changeCount] = mask;
+        changeCount++;
+    }
+
+    private int tile(long x, long y) {
+        return (int) (y >>> 6) * tilesX + (int) (x >>> 6);
+    }
+
+    private long index(long x, long y) {
+        return (long) tile(x, y) << 6 | (y & 63);
+    }
+
+    /* Stepped tiles of a band waiting to be written, their row arrays are kept for the next band */
+    private static class Pending {
+        int[] tiles = new int[16];
+        long[][] rows = new long[16][];
+        int count = 0;
+
+        long[] add(int t) {
+            if (count == tiles.length) {
+                tiles = Arrays.copyOf(tiles, count * 2);
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            if (rows[count] == null) rows[count] = new long[64];
+
+            tiles[count] = t;
+            return rows[count++];
+        }
+    }
+}
+
+class OffHeapSnapshot extends ChunkSnapshot {
+    // engine version the snapshot was filled at, 0 before the first time
+    long version = 0;
+}
+
+/*
+ * Longs in native memory indexed by long, in direct buffers of up to 1 GB.
+ * Allocated zeroed all at once, IllegalArgumentException when there isn't
+ * that much native memory to have; the JVM allows as much as the heap
+ * unless -XX:MaxDirectMemorySize says otherwise.
+ */
+class NativeWords {
+    private static final int BLOCK_SHIFT = 27;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private final LongBuffer[] blocks;
+    private final long length;
+
+    NativeWords(long length) {
+        if (length < 0 || length >> BLOCK_SHIFT >= Integer.MAX_VALUE) throw new IllegalArgumentException(length + " longs is out of range");
+
+        this.length = length;
+        blocks = new LongBuffer[(int) ((length + BLOCK_MASK) >> BLOCK_SHIFT)];
+
+        try {
+            for (int i = 0; i < blocks.length; i++) {
+                final int n = (int) Math.min(1L << BLOCK_SHIFT, length - ((long) i << BLOCK_SHIFT));
+                blocks[i] = ByteBuffer.allocateDirect(n * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+        catch (OutOfMemoryError err) {
+            throw new IllegalArgumentException(String.format("%d MB of native memory isn't available, raise -XX:MaxDirectMemorySize", (length * 8) >> 20));
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    long get(long i) {
+        return blocks[(int) (i >>> BLOCK_SHIFT)].get((int) i & BLOCK_MASK);
+    }
+
+    void set(long i, long v) {
+        blocks[(int) (i >>> BLOCK_SHIFT)].put((int) i & BLOCK_MASK, v);
+    }
+
+    /* Copies `to.length` longs from `i` into `to`, all in one block */
+    void read(long i, long[] to) {
+        read(i, to, 0, to.length);
+    }
+
+    void read(long i, long[] to, int offset, int n) {
+        blocks[(int) (i >>> BLOCK_SHIFT)].get((int) i & BLOCK_MASK, to, offset, n);
+    }
+}
@@ -0,0 +1,514 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+ * Streaming readers and writers of RLE, Life 1.06 and plaintext `.cells`.
+ * Readers hand horizontal runs of live cells to a CellSink as they decode
+ * them, so nothing is kept per cell. Writers read the rows of the live
+ * 64x64 tiles of a snapshot of the engine in order, so they cost what lives
+ * rather than the area of its bounding box.
+ */
+final class PatternIO {
+    interface CellSink {
+        void cell(long x, long y);
+
+        default void run(long x, long y, long length) {
+            for (long i = 0; i < length; i++) cell(x + i, y);
+        }
+
+        /* Called before the first cell when the pattern declares its size or rule */
+        default void header(long width, long height, String rule) {}
+    }
+
+    enum Format {
+        RLE,
+        LIFE_106,
+        PLAINTEXT,
+    }
+
+    private static final HashMap<String, String> BUILT_IN = new HashMap<>();
+
+    static {
+        BUILT_IN.put("glider", ".O\n..O\nOOO");
+        BUILT_IN.put("rpentomino", ".OO\nOO\n.O");
+        BUILT_IN.put("acorn", ".O\n...O\nOO..OOO");
+        BUILT_IN.put("gosper",
+            "........................O\n" +
+            "......................O.O\n" +
+            "............OO......OO............OO\n" +
+            "...........O...O....OO............OO\n" +
+            "OO........O.....O...OO\n" +
+            "OO........O...O.OO....O.O\n" +
+            "..........O.....O.......O\n" +
+            "...........O...O\n" +
+            "............OO");
+    }
+
+    private PatternIO() {}
+
+    static Format formatOf(String path) {
+        String p = path.toLowerCase();
+        if (p.endsWith(".rle")) return Format.RLE;
+        if (p.endsWith(".lif") || p.endsWith(".life")) return Format.LIFE_106;
+        return Format.PLAINTEXT;
+    }
+
+    /*
+     * Loads a built-in pattern by name, a random soup `soup:<percent>[:<seed>]`
+     * filling `width` x `height` cells, or a pattern file.
+     */
+    static void load(String spec, int width, int height, CellSink sink) throws IOException {
+        if (spec.startsWith("soup:")) {
+            String[] parts = spec.split(":", -1);
+            final String bad = String.format("Bad soup spec `%s`, expected soup:<percent>[:<seed>]", spec);
+            if (parts.length > 3) throw new IOException(bad);
+
+            int percent;
+            long seed;
+            try {
+                percent = Integer.parseInt(parts[1]);
+                seed = parts.length > 2 ? Long.parseLong(parts[2]) : 42;
+            }
+            catch (NumberFormatException err) {
+                throw new IOException(bad);
+            }
+            if (percent < 0 || percent > 100) throw new IOException(String.format("Bad soup percent %d", percent));
+
+            soup(width, height, percent, new Random(seed), sink);
+            return;
+        }
+
+        String builtIn = BUILT_IN.get(spec);
+        if (builtIn != null) {
+            readPlaintext(new StringReader(builtIn), sink);
+            return;
+        }
+
+        try (Reader in = new FileReader(spec)) {
+            read(in, formatOf(spec), sink);
+        }
+    }
+
+    static void read(Reader in, Format format, CellSink sink) throws IOException {
+        switch (format) {
+            case RLE: readRle(in, sink); break;
+            case LIFE_106: readLife106(in, sink); break;
+            default: readPlaintext(in, sink); break;
+        }
+    }
+
+    static void soup(int width, int height, int percent, Random random, CellSink sink) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (random.nextInt(100) < percent) sink.cell(x, y);
+            }
+        }
+    }
+
+    /* Sink that puts the pattern centred on (x, y), or with its corner there when its size is unknown */
+    static CellSink centredOn(CellWorld world, long x, long y) {
+        return centredOn(world.getRule(), x, y, new CellSink() {
+            @Override
+            public void cell(long cx, long cy) {
+                world.setRun(cx, cy, 1);
+            }
+
+            @Override
+            public void run(long cx, long cy, long length) {
+                world.setRun(cx, cy, length);
+            }
+        });
+    }
+
+    /* Sink that hands the pattern to `to` centred on (x, y), warning when it is for another rule than `worldRule` */
+    static CellSink centredOn(Rule worldRule, long x, long y, CellSink to) {
+        return new CellSink() {
+            private long offsetX = x, offsetY = y;
+
+            @Override
+            public void header(long width, long height, String rule) {
+                offsetX = x - width / 2;
+                offsetY = y - height / 2;
+
+                if (rule != null && !isSameRule(rule, worldRule)) {
+                    System.err.printf("Pattern is for rule `%s`, the world runs %s\n", rule, worldRule);
+                }
+            }
+
+            @Override
+            public void cell(long cx, long cy) {
+                to.cell(cx + offsetX, cy + offsetY);
+            }
+
+            @Override
+            public void run(long cx, long cy, long length) {
+                to.run(cx + offsetX, cy + offsetY, length);
+            }
+        };
+    }
+
+    private static boolean isSameRule(String rulestring, Rule rule) {
+        try {
+            return Rule.parse(rulestring).getName().equals(rule.getName());
+        }
+        catch (IllegalArgumentException err) {
+            return false;
+        }
+    }
+
+    /* Plaintext `.cells`: lines starting with `!` are comments, `O` or `*` is a live cell */
+    static void readPlaintext(Reader reader, CellSink sink) throws IOException {
+        CharInput in = new CharInput(reader);
+        long x = 0, y = 0, runStart = -1;
+
+        for (int c; (c = in.read()) != -1; ) {
+            if (c == '!' && x == 0) {
+                in.skipLine();
+                continue;
+            }
+
+            boolean alive = c == 'O' || c == '*';
+            if (alive && runStart == -1) runStart = x;
+            if (!alive && runStart != -1) {
+                sink.run(runStart, y, x - runStart);
+                runStart = -1;
+            }
+
+            if (c == '\n') {
+                x = 0;
+                y++;
+            }
+            else if (c != '\r') x++;
+        }
+
+        if (runStart != -1) sink.run(runStart, y, x - runStart);
+    }
+
+    /* Run length encoded pattern with an optional `x = .., y = .., rule = ..` header */
+    static void readRle(Reader reader, CellSink sink) throws IOException {
+        CharInput in = new CharInput(reader);
+        long x = 0, y = 0, count = 0;
+        boolean lineStart = true, body = false;
+
+        for (int c; (c = in.read()) != -1; ) {
+            if (lineStart && !body && (c == '#' || c == 'x')) {
+                String line = in.readLine();
+                if (c == 'x') readRleHeader("x" + line, sink);
+                continue;
+            }
+
+            lineStart = c == '\n';
+
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') continue;
+
+            body = true;
+            long n = count == 0 ? 1 : count;
+            count = 0;
+
+            if (c == '!') break;
+            else if (c == '$') {
+                y += n;
+                x = 0;
+            }
+            else if (c == 'b' || c == '.') x += n;
+            else if (Character.isLetter(c)) {
+                sink.run(x, y, n);
+                x += n;
+            }
+            else throw new IOException(String.format("Unexpected `%c` in RLE", (char) c));
+        }
+    }
+
+    private static void readRleHeader(String line, CellSink sink) throws IOException {
+        long width = 0, height = 0;
+        String rule = null;
+
+        // the rule comes last and Larger than Life rules have commas of their own
+        int r = line.indexOf("rule");
+        if (r != -1) {
+            int eq = line.indexOf('=', r);
+            if (eq == -1) throw new IOException("Bad RLE header");
+
+            rule = line.substring(eq + 1).trim();
+            line = line.substring(0, r);
+        }
+
+        for (final String part : line.split(",")) {
+            if (part.trim().isEmpty()) continue;
+
+            int eq = part.indexOf('=');
+            if (eq == -1) throw new IOException("Bad RLE header");
+
+            String key = part.substring(0, eq).trim();
+            String value = part.substring(eq + 1).trim();
+
+            try {
+                if (key.equals("x")) width = Long.parseLong(value);
+                else if (key.equals("y")) height = Long.parseLong(value);
+            }
+            catch (NumberFormatException err) {
+                throw new IOException("Bad size in RLE header");
+            }
+        }
+
+        sink.header(width, height, rule);
+    }
+
+    /* `#Life 1.06` followed by one `x y` pair per live cell */
+    static void readLife106(Reader reader, CellSink sink) throws IOException {
+        CharInput in = new CharInput(reader);
+        String first = in.readLine();
+        if (first == null || !first.trim().equals("#Life 1.06")) throw new IOException("Not a Life 1.06 file");
+
+        long[] xy = new long[2];
+        int n = 0;
+        long value = 0;
+        boolean negative = false, inNumber = false;
+
+        for (int c; ; ) {
+            c = in.read();
+
+            if (c == '-' && !inNumber) {
+                negative = true;
+                inNumber = true;
+            }
+            else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inNumber = true;
+            }
+            else {
+                if (inNumber) {
+                    if (n == 2) throw new IOException("More than two numbers on a Life 1.06 line");
+                    xy[n++] = negative ? -value : value;
+                    value = 0;
+                    negative = inNumber = false;
+                }
+
+                if (c == '#' && n == 0) in.skipLine();
+                else if (c == '\n' || c == -1) {
+                    if (n == 2) sink.cell(xy[0], xy[1]);
+                    else if (n != 0) throw new IOException("Expected two numbers on a Life 1.06 line");
+                    n = 0;
+                }
+                else if (c != ' ' && c != '\t' && c != '\r') {
+                    throw new IOException(String.format("Unexpected `%c` in Life 1.06", (char) c));
+                }
+
+                if (c == -1) break;
+            }
+        }
+    }
+
+    static void save(LifeEngine engine, String rule, String path) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(path))) {
+            write(engine, rule, formatOf(path), out);
+        }
+    }
+
+    static void write(LifeEngine engine, String rule, Format format, Writer out) throws IOException {
+        long[] b = new long[4];
+        boolean empty = !engine.getBounds(b);
+
+        switch (format) {
+            case RLE: writeRle(engine, empty ? null : b, rule, out); break;
+            case LIFE_106: writeLife106(engine, empty ? null : b, out); break;
+            default: writePlaintext(engine, empty ? null : b, out); break;
+        }
+    }
+
+    private interface RowVisitor {
+        void row(long x, long y, long bits) throws IOException;
+    }
+
+    /*
+     * Hands the non-empty 64-cell rows of the live tiles of `engine` inside its bounds `b` to `v`,
+     * top to bottom and left to right; bit i of `bits` is the cell x + i
+     */
+    private static void forEachRow(LifeEngine engine, long[] b, RowVisitor v) throws IOException {
+        final WorldSnapshot s = engine.newSnapshot();
+        engine.copyTo(s);
+
+        final ArrayList<long[]> tiles = new ArrayList<>();
+        s.forEachTile((tx, ty, rows) -> tiles.add(new long[] { ty, tx }));
+        tiles.sort((p, q) -> p[0] != q[0] ? Long.compare(p[0], q[0]) : Long.compare(p[1], q[1]));
+
+        for (int from = 0, to; from < tiles.size(); from = to) {
+            final long ty = tiles.get(from)[0];
+            for (to = from; to < tiles.size() && tiles.get(to)[0] == ty; to++);
+
+            for (long y = Math.max(ty * 64, b[1]), end = Math.min(ty * 64 + 63, b[3]); y <= end; y++) {
+                for (int t = from; t < to; t++) {
+                    final long x = tiles.get(t)[1] * 64;
+                    final long bits = s.getRow(x, y);
+                    if (bits != 0) v.row(x, y, bits);
+                }
+            }
+        }
+    }
+
+    private static void writeRle(LifeEngine engine, long[] b, String rule, Writer out) throws IOException {
+        if (b == null) {
+            out.write(String.format("x = 0, y = 0, rule = %s\n!\n", rule));
+            return;
+        }
+
+        out.write(String.format("x = %d, y = %d, rule = %s\n", b[2] - b[0] + 1, b[3] - b[1] + 1, rule));
+
+        // the live run not written yet, so runs of neighbouring words join into one
+        final RleLine line = new RleLine(out);
+        final long[] run = { b[1], b[0], b[0], b[0] }; // row, first cell not written in it, run start, run end
+
+        forEachRow(engine, b, (x, y, bits) -> {
+            for (long r = bits; r != 0; ) {
+                final int start = Long.numberOfTrailingZeros(r);
+                final int length = Long.numberOfTrailingZeros(~(r >>> start));
+                r = start + length == 64 ? 0 : r & -1L << (start + length);
+
+                if (y != run[0]) {
+                    line.run(run);
+                    line.item(y - run[0], '$');
+                    run[0] = y;
+                    run[1] = run[2] = run[3] = b[0];
+                }
+
+                if (x + start != run[3]) {
+                    line.run(run);
+                    run[2] = x + start;
+                }
+                run[3] = x + start + length;
+            }
+        });
+
+        line.run(run);
+        line.item(1, '!');
+        line.flush();
+    }
+
+    private static void writeLife106(LifeEngine engine, long[] b, Writer out) throws IOException {
+        out.write("#Life 1.06\n");
+        if (b == null) return;
+
+        forEachRow(engine, b, (x, y, bits) -> {
+            for (long r = bits; r != 0; r &= r - 1) out.write((x + Long.numberOfTrailingZeros(r)) + " " + y + "\n");
+        });
+    }
+
+    private static void writePlaintext(LifeEngine engine, long[] b, Writer out) throws IOException {
+        out.write("!Saved by GameOfLife\n");
+        if (b == null) return;
+
+        // the row being filled, written once the next one starts
+        final char[] row = new char[(int) (b[2] - b[0] + 1)];
+        final long[] at = { b[1], -1 }; // y, last live cell in it
+        Arrays.fill(row, '.');
+
+        forEachRow(engine, b, (x, y, bits) -> {
+            if (y != at[0]) {
+                out.write(row, 0, (int) at[1] + 1);
+                for (long i = at[0]; i < y; i++) out.write('\n');
+
+                Arrays.fill(row, 0, (int) at[1] + 1, '.');
+                at[0] = y;
+                at[1] = -1;
+            }
+
+            for (long r = bits; r != 0; r &= r - 1) {
+                final int i = (int) (x + Long.numberOfTrailingZeros(r) - b[0]);
+                row[i] = 'O';
+                at[1] = i;
+            }
+        });
+
+        out.write(row, 0, (int) at[1] + 1);
+        for (long i = at[0]; i <= b[3]; i++) out.write('\n');
+    }
+
+    /* Wraps RLE items at 70 columns */
+    private static class RleLine {
+        private final Writer out;
+        private final StringBuilder sb = new StringBuilder();
+
+        RleLine(Writer out) {
+            this.out = out;
+        }
+
+        /* Writes the live run kept by writeRle(), if it has cells, and the dead cells before it */
+        void run(long[] run) throws IOException {
+            if (run[3] == run[2]) return;
+
+            if (run[2] > run[1]) item(run[2] - run[1], 'b');
+            item(run[3] - run[2], 'o');
+            run[1] = run[2] = run[3];
+        }
+
+        void item(long count, char tag) throws IOException {
+            int len = sb.length();
+            if (count > 1) sb.append(count);
+            sb.append(tag);
+
+            if (sb.length() > 70) {
+                out.append(sb, 0, len);
+                out.write('\n');
+                sb.delete(0, len);
+            }
+        }
+
+        void flush() throws IOException {
+            out.write(sb.toString());
+            out.write('\n');
+        }
+    }
+
+    /* Buffered characters without the per-call locking of BufferedReader.read() */
+    private static class CharInput {
+        private final Reader in;
+        private final char[] buffer = new char[1 << 16];
+        private int pos = 0, len = 0;
+
+        CharInput(Reader in) {
+            this.in = in;
+        }
+
+        int read() throws IOException {
+            if (pos == len) {
+                len = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    return -1;
+                }
+            }
+
+            return buffer[pos++];
+        }
+
+        void skipLine() throws IOException {
+            for (int c; (c = read()) != -1 && c != '\n'; ) {}
+        }
+
+        String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read()) != -1 && c != '\n') {
+                if (c != '\r') sb.append((char) c);
+            }
+
+            return c == -1 && sb.length() == 0 ? null : sb.toString();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.Arrays;
+
+/*
+ * World hashes of the last generations, to notice when the world repeats
+ * itself. Once generation g hashes like g - p, every later generation n looks
+ * like g + (n - g) mod p, as long as nobody edits the world; edits and gaps in
+ * the generations start it over.
+ *
+ * Hashes sit in an open addressed table four times the window, where a lookup
+ * looks at a fixed run of slots and entries older than the window count as
+ * free, so a generation costs the same whatever the window.
+ */
+class PeriodDetector {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int PROBES = 8;
+
+    private final int window;
+    private final long[] hashes;
+    private final long[] generations;
+    private final int mask;
+
+    private long last = EMPTY;
+    private long period = 0, since;
+
+    PeriodDetector(int window) {
+        this.window = Math.max(1, window);
+
+        int capacity = Integer.highestOneBit(this.window * 4 - 1) << 1;
+        hashes = new long[capacity];
+        generations = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /* Forgets everything, the table itself is cleared by the next add() */
+    void reset() {
+        last = EMPTY;
+        period = 0;
+    }
+
+    /* Remembers the hash of `generation`, true when it completes a cycle for the first time */
+    boolean add(long generation, long hash) {
+        if (period != 0) return false;
+
+        if (last == EMPTY || generation != last + 1) Arrays.fill(generations, EMPTY);
+        last = generation;
+
+        final int home = (int) hash & mask;
+
+        for (int i = 0, s = home; i < PROBES; i++, s = (s + 1) & mask) {
+            if (hashes[s] == hash && isLive(s, generation)) {
+                period = generation - generations[s];
+                since = generation;
+                return true;
+            }
+        }
+
+        // first free slot of the run, or its oldest entry when a rare full run leaves none
+        int slot = home;
+        for (int i = 0, s = home; i < PROBES; i++, s = (s + 1) & mask) {
+            if (!isLive(s, generation)) {
+                slot = s;
+                break;
+            }
+            if (generations[s] < generations[slot]) slot = s;
+        }
+
+        hashes[slot] = hash;
+        generations[slot] = generation;
+        return false;
+    }
+
+    private boolean isLive(int s, long generation) {
+        return generations[s] != EMPTY && generation - generations[s] <= window;
+    }
+
+    /* Period of the world, 0 until one is found */
+    long getPeriod() {
+        return period;
+    }
+
+    /* First generation known to repeat an earlier one */
+    long getSince() {
+        return since;
+    }
+
+    /* Steps that take the world from `generation` to how it looks at `target`, once the period is known */
+    long stepsTo(long generation, long target) {
+        return Math.floorMod(target - generation, period);
+    }
+}
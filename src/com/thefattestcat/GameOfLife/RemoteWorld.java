@@ -0,0 +1,126 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/*
+ * World shown by a viewer of a SimulationServer: its engine never steps, a
+ * receiver thread applies the frames from the server to it and hands them to
+ * the renderer the way SimulationThread does. It is never paused, so the
+ * renderer takes no edits, steps or jumps, and can't be paused or cleared.
+ * When the renderer hasn't taken the last generation yet the next one skips
+ * it, except the latest the server sent, which always gets drawn.
+ */
+class RemoteWorld extends CellWorld {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final String address;
+    private byte[] frame = new byte[1 << 16];
+    private Thread receiver;
+
+    private RemoteWorld(LifeEngine engine, SocketChannel channel, DataInputStream in, String address) {
+        super(engine);
+        this.channel = channel;
+        this.in = in;
+        this.address = address;
+        super.setPaused(false);
+    }
+
+    /* Connects to the server at `address`, see SimulationServer.connectAddress(); null when that fails */
+    static RemoteWorld connect(String address) {
+        SocketChannel channel = null;
+
+        try {
+            channel = SocketChannel.open(SimulationServer.connectAddress(address));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+
+            final byte[] hello = readFrame(in, new byte[256]);
+            if (DeltaFrame.typeOf(hello) != DeltaFrame.HELLO) throw new IOException("no greeting from the server");
+
+            final DeltaFrame f = new DeltaFrame(hello, 4);
+            if (f.readVarint() != DeltaFrame.VERSION) throw new IOException("unknown stream version");
+
+            final int size = (int) f.readVarint();
+            final Rule rule = Rule.parse(f.readName());
+
+            // the engine only has to hold the world, a bordered one as large as the server's
+            final String engine = size == 0 ? "chunks" : Settings.getEngine().equals("offheap") ? "offheap" : "grid";
+            return new RemoteWorld(createEngine(engine, size, rule), channel, in, address);
+        }
+        catch (IOException | IllegalArgumentException err) {
+            System.err.printf("Cannot view `%s`: %s\n", address, err.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (receiver != null) return;
+
+        receiver = new Thread(this::receive, "Viewer");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @Override
+    public void setPaused(boolean p) {
+    }
+
+    @Override
+    public void requestClear() {
+    }
+
+    private void receive() {
+        final LifeEngine engine = getEngine();
+
+        try {
+            while (true) {
+                frame = readFrame(in, frame);
+                final byte type = DeltaFrame.typeOf(frame);
+                if (type != DeltaFrame.KEYFRAME && type != DeltaFrame.DELTA) continue;
+
+                final DeltaFrame f = new DeltaFrame(frame, 4);
+                final long generation = f.readVarint();
+
+                if (type == DeltaFrame.KEYFRAME) engine.clear();
+                f.forEachRow(engine::xorRow);
+                engine.setGeneration(generation);
+
+                publish(in.available() == 0);
+            }
+        }
+        catch (IOException err) {
+            System.err.printf("Lost the server at `%s`: %s\n", address, err.getMessage());
+        }
+        finally {
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    /* Reads a frame into `buffer`, or a larger one it returns, its length first as sent */
+    private static byte[] readFrame(DataInputStream in, byte[] buffer) throws IOException {
+        final int length = Integer.reverseBytes(in.readInt());
+        if (length <= 0) throw new IOException("bad frame length " + length);
+
+        if (buffer.length < 4 + length) buffer = Arrays.copyOf(buffer, Math.max(4 + length, buffer.length * 2));
+        for (int s = 0; s < 32; s += 8) buffer[s / 8] = (byte) (length >>> s);
+        in.readFully(buffer, 4, length);
+
+        return buffer;
+    }
+}
@@ -0,0 +1,77 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Changed 64-cell rows as bytes, the way Journal records and SimulationServer
+ * frames hold them: per row a varint of its distance from the row before,
+ * one of its word column's, then the shift of the lowest set bit of the mask
+ * and a varint of the rest above it, or RAW and the mask as is when it is too
+ * spread out for that to pay. Distances are zigzagged, a quiet row takes three
+ * or four bytes.
+ */
+class RowEncoder implements LifeEngine.ChangeVisitor {
+    // in place of the shift of a mask spread over more than a few bytes, which follows as is
+    static final byte RAW = 64;
+
+    byte[] bytes = new byte[256];
+    int length;
+    private long lastX, lastY;
+
+    void begin() {
+        length = 0;
+        lastX = 0;
+        lastY = 0;
+    }
+
+    @Override
+    public void change(long x, long y, long mask) {
+        if (length + 32 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+
+        final int shift = Long.numberOfTrailingZeros(mask);
+        final long rest = mask >>> shift >>> 1;
+        putVarint(zigzag(y - lastY));
+        putVarint(zigzag((x - lastX) >> 6));
+
+        if (rest < 1 << 21) {
+            bytes[length++] = (byte) shift;
+            putVarint(rest);
+        }
+        else {
+            bytes[length++] = RAW;
+            for (int i = 0; i < 64; i += 8) bytes[length++] = (byte) (mask >>> i);
+        }
+
+        lastX = x;
+        lastY = y;
+    }
+
+    /* Every live row of `s`, as changes from an empty world */
+    void putTiles(WorldSnapshot s) throws IOException {
+        s.forEachTile((tx, ty, rows) -> {
+            for (int i = 0; i < 64; i++) {
+                if (rows[i] != 0) change(tx * 64, ty * 64 + i, rows[i]);
+            }
+        });
+    }
+
+    void putVarint(long v) {
+        if (length + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+
+        if (v < 0x80) {
+            bytes[length++] = (byte) v;
+            return;
+        }
+
+        while ((v & ~0x7FL) != 0) {
+            bytes[length++] = (byte) (v | 0x80);
+            v >>>= 7;
+        }
+        bytes[length++] = (byte) v;
+    }
+
+    static long zigzag(long v) {
+        return v << 1 ^ v >> 63;
+    }
+}
@@ -0,0 +1,27 @@
+package com.thefattestcat.GameOfLife;
+
+/* Computes words [fromX, toX) of row `y` of `src` into `dst`, BitGrid.stepWords or one doing the same faster */
+interface RowKernel {
+    void step(long[] src, long[] dst, int y, int fromX, int toX);
+
+    /* Words it takes at once, ranges narrower than that get nothing out of it */
+    default int getLanes() {
+        return 1;
+    }
+
+    /* Kernel called `name` for `grid`, the scalar one when it is unknown or can't be loaded */
+    static RowKernel of(String name, BitGrid grid) {
+        if (name.equals("vector")) {
+            // loaded by name, so the rest runs without the incubator module
+            try {
+                return (RowKernel) Class.forName("com.thefattestcat.GameOfLife.VectorKernel")
+                    .getDeclaredConstructor(BitGrid.class).newInstance(grid);
+            }
+            catch (ReflectiveOperationException | LinkageError err) {
+                System.err.println("Vector kernel not available, run with `--add-modules jdk.incubator.vector`; stepping with the scalar one");
+            }
+        }
+
+        return grid::stepWords;
+    }
+}
@@ -0,0 +1,273 @@
+package com.thefattestcat.GameOfLife;
+
+/*
+ * Cell rule compiled from a rulestring. Life-like rules such as `B3/S23`
+ * (Conway), `B36/S23` (HighLife), `B3678/S34678` (Day & Night) or `B2/S`
+ * (Seeds) are compiled into birth and survival count bits, from which come
+ * the count masks for the bit-sliced word kernel and, on first use, the
+ * 16-bit 4x4 -> 2x2 table HashLife steps leaves with. Conway keeps its hand-reduced adder network.
+ *
+ * Larger than Life rules such as `R5,C0,M1,S34..58,B34..45,NM` (Bosco) only
+ * keep their radius, states and counts, they run on LtlEngine.
+ */
+final class Rule {
+    static final Rule CONWAY = parse("B3/S23");
+    static final int MAX_RADIUS = 500;
+
+    private final String name;
+    private final int radius, states;
+    private final boolean vonNeumann;
+
+    // indexed by the number of live neighbours, the centre is never counted here
+    private final boolean[] birthCounts, surviveCounts;
+
+    private final int birth, survive;
+    private final boolean lifeLike, conway;
+
+    private byte[] leafResults;
+
+    // birth then survive, -1 for the counts in the rule and 0 for the rest
+    private final long[] masks = new long[18];
+
+    private Rule(String name, int radius, int states, boolean vonNeumann, boolean[] birthCounts, boolean[] surviveCounts) {
+        this.radius = radius;
+        this.states = states;
+        this.vonNeumann = vonNeumann;
+        this.birthCounts = birthCounts;
+        this.surviveCounts = surviveCounts;
+
+        lifeLike = radius == 1 && !vonNeumann && states == 2;
+
+        int birth = 0, survive = 0;
+        if (lifeLike) {
+            for (int n = 0; n <= 8; n++) {
+                if (birthCounts[n]) birth |= 1 << n;
+                if (surviveCounts[n]) survive |= 1 << n;
+            }
+        }
+        this.birth = birth;
+        this.survive = survive;
+
+        conway = lifeLike && birth == 1 << 3 && survive == (1 << 2 | 1 << 3);
+        this.name = lifeLike ? "B" + digits(birth) + "/S" + digits(survive) : name;
+
+        for (int n = 0; n <= 8; n++) {
+            masks[n] = -(birth >>> n & 1);
+            masks[9 + n] = -(survive >>> n & 1);
+        }
+    }
+
+    /*
+     * `B<digits>/S<digits>` in any case, the slash is optional; `S/B` digits like `23/3` are read too.
+     * Larger than Life rules are `R<radius>,C<states>,M<0|1>,S<min>..<max>,B<min>..<max>,N<M|N>`,
+     * where M1 counts the centre too and NN is the von Neumann diamond instead of the Moore square.
+     */
+    static Rule parse(String rulestring) {
+        String s = rulestring.trim().toUpperCase();
+        if (s.matches("R\\d+,.*")) return parseLargerThanLife(s, rulestring);
+
+        int birth = 0, survive = 0;
+
+        if (s.matches("B[0-8]*/?S[0-8]*")) {
+            int si = s.indexOf('S');
+            birth = counts(s.substring(1, si).replace("/", ""));
+            survive = counts(s.substring(si + 1));
+        }
+        else if (s.matches("[0-8]*/[0-8]*")) {
+            int slash = s.indexOf('/');
+            survive = counts(s.substring(0, slash));
+            birth = counts(s.substring(slash + 1));
+        }
+        else throw new IllegalArgumentException("Bad rulestring `" + rulestring + "`");
+
+        boolean[] b = new boolean[9], sv = new boolean[9];
+        for (int n = 0; n <= 8; n++) {
+            b[n] = (birth >>> n & 1) != 0;
+            sv[n] = (survive >>> n & 1) != 0;
+        }
+
+        return create(null, 1, 2, false, b, sv);
+    }
+
+    private static Rule parseLargerThanLife(String s, String rulestring) {
+        int radius = -1, c = 0, middle = 0;
+        int[] sr = null, br = null;
+        boolean vonNeumann = false;
+
+        for (final String part : s.split(",")) {
+            if (part.matches("R\\d{1,4}")) radius = Integer.parseInt(part.substring(1));
+            else if (part.matches("C\\d{1,3}")) c = Integer.parseInt(part.substring(1));
+            else if (part.matches("M[01]")) middle = part.charAt(1) - '0';
+            else if (part.matches("S\\d{1,6}(\\.\\.\\d{1,6})?")) sr = range(part.substring(1));
+            else if (part.matches("B\\d{1,6}(\\.\\.\\d{1,6})?")) br = range(part.substring(1));
+            else if (part.matches("N[MN]")) vonNeumann = part.charAt(1) == 'N';
+            else throw new IllegalArgumentException("Bad part `" + part + "` in rulestring `" + rulestring + "`");
+        }
+
+        if (radius < 1 || radius > MAX_RADIUS) throw new IllegalArgumentException("Radius must be 1 to " + MAX_RADIUS);
+        if (c > 255) throw new IllegalArgumentException("At most 255 states are supported");
+        if (sr == null || br == null) throw new IllegalArgumentException("Rulestring `" + rulestring + "` needs S and B ranges");
+
+        int cells = vonNeumann ? 2 * radius * (radius + 1) : (2 * radius + 1) * (2 * radius + 1) - 1;
+        boolean[] b = new boolean[cells + 1], sv = new boolean[cells + 1];
+
+        // with M1 the counts in the rulestring include the centre, which is alive when surviving and dead when born
+        for (int n = 0; n <= cells; n++) {
+            b[n] = n >= br[0] && n <= br[1];
+            sv[n] = n + middle >= sr[0] && n + middle <= sr[1];
+        }
+
+        String name = String.format("R%d,C%d,M%d,S%d..%d,B%d..%d,N%c", radius, c < 2 ? 0 : c, middle,
+                                    sr[0], sr[1], br[0], br[1], vonNeumann ? 'N' : 'M');
+        return create(name, radius, Math.max(2, c), vonNeumann, b, sv);
+    }
+
+    private static Rule create(String name, int radius, int states, boolean vonNeumann, boolean[] birth, boolean[] survive) {
+        // births on zero neighbours would fill the empty plane, which sparse stepping never looks at
+        if (birth[0]) throw new IllegalArgumentException("B0 rules are not supported");
+
+        return new Rule(name, radius, states, vonNeumann, birth, survive);
+    }
+
+    private static int[] range(String s) {
+        int dots = s.indexOf("..");
+        if (dots == -1) return new int[] { Integer.parseInt(s), Integer.parseInt(s) };
+
+        return new int[] { Integer.parseInt(s.substring(0, dots)), Integer.parseInt(s.substring(dots + 2)) };
+    }
+
+    private static int counts(String digits) {
+        int mask = 0;
+        for (int i = 0; i < digits.length(); i++) mask |= 1 << (digits.charAt(i) - '0');
+        return mask;
+    }
+
+    private static String digits(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n <= 8; n++) {
+            if ((mask >>> n & 1) != 0) sb.append(n);
+        }
+
+        return sb.toString();
+    }
+
+    /* Canonical rulestring, `B3/S23` style for Life-like rules */
+    public String getName() {
+        return name;
+    }
+
+    /* Two states, radius 1 Moore neighbourhood: the rules the bit-packed engines and HashLife run */
+    public boolean isLifeLike() {
+        return lifeLike;
+    }
+
+    public boolean isConway() {
+        return conway;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /* Number of states, over 2 when dying cells take more generations to clear */
+    public int getStates() {
+        return states;
+    }
+
+    public boolean isVonNeumann() {
+        return vonNeumann;
+    }
+
+    /* Whether a dead cell with `n` live neighbours is born */
+    public boolean isBirth(int n) {
+        return birthCounts[n];
+    }
+
+    /* Whether a live cell with `n` live neighbours, not counting itself, stays alive */
+    public boolean isSurvival(int n) {
+        return surviveCounts[n];
+    }
+
+    /* Highest possible number of live neighbours */
+    public int getMaxCount() {
+        return birthCounts.length - 1;
+    }
+
+    /* Centre 2x2 of every 4x4 block after one generation, bit y * 4 + x of the index and of the result */
+    public byte[] getLeafResults() {
+        if (leafResults != null) return leafResults;
+
+        byte[] results = new byte[1 << 16];
+        for (int m = 0; m < results.length; m++) {
+            int r = 0;
+
+            for (int i = 0; i < 4; i++) {
+                int x = i & 1, y = i >>> 1;
+
+                // the 3x3 around cell (x + 1, y + 1), its centre is bit 4
+                int hood = 0;
+                for (int dy = 0; dy < 3; dy++) hood |= (m >>> ((y + dy) * 4 + x) & 7) << (dy * 3);
+
+                int n = Integer.bitCount(hood & ~(1 << 4));
+                int counts = (hood >>> 4 & 1) != 0 ? survive : birth;
+                if ((counts >>> n & 1) != 0) r |= 1 << i;
+            }
+
+            results[m] = (byte) r;
+        }
+
+        leafResults = results;
+        return results;
+    }
+
+    /*
+     * The rule for 64 cells at once. Arguments are the 3x3 block of words around
+     * `c`, the eight neighbour counts are summed with bitwise full adders.
+     */
+    public long nextWord(long ul, long u, long ur, long l, long c, long r, long dl, long d, long dr) {
+        long uw = (u << 1) | (ul >>> 63), ue = (u >>> 1) | (ur << 63);
+        long cw = (c << 1) | (l >>> 63),  ce = (c >>> 1) | (r << 63);
+        long dw = (d << 1) | (dl >>> 63), de = (d >>> 1) | (dr << 63);
+
+        long ux = uw ^ ue, us = ux ^ u, uc = (uw & ue) | (ux & u);
+        long dx = dw ^ de, ds = dx ^ d, dc = (dw & de) | (dx & d);
+        long ms = cw ^ ce, mc = cw & ce;
+
+        long ox = us ^ ms, ones = ox ^ ds, carry = (us & ms) | (ox & ds);
+        long tx = uc ^ mc, twos = tx ^ dc, fours = (uc & mc) | (tx & dc);
+
+        long two = twos ^ carry;
+
+        if (conway) {
+            long high = fours | (twos & carry);
+            return two & ~high & (ones | c);
+        }
+
+        // bits 2 and 3 of the count, so each cell has its full count 0..8 in (eights, four, two, ones)
+        long fourCarry = twos & carry;
+        long four = fours ^ fourCarry, eights = fours & fourCarry;
+
+        // low three bits of the count decoded into the eight counts, 8 is flagged by `eights` alone
+        long n0 = ~ones & ~two, n1 = ones & ~two, n2 = ~ones & two, n3 = ones & two;
+        long lo = ~four & ~eights, hi = four;
+
+        // -1 where a count leads to a live cell, for the live centres and the dead ones
+        long[] m = masks;
+        long born = ~c, kept = c;
+
+        return ((n0 & lo) & ((m[0] & born) | (m[9] & kept)))
+             | ((n1 & lo) & ((m[1] & born) | (m[10] & kept)))
+             | ((n2 & lo) & ((m[2] & born) | (m[11] & kept)))
+             | ((n3 & lo) & ((m[3] & born) | (m[12] & kept)))
+             | ((n0 & hi) & ((m[4] & born) | (m[13] & kept)))
+             | ((n1 & hi) & ((m[5] & born) | (m[14] & kept)))
+             | ((n2 & hi) & ((m[6] & born) | (m[15] & kept)))
+             | ((n3 & hi) & ((m[7] & born) | (m[16] & kept)))
+             | (eights & ((m[8] & born) | (m[17] & kept)));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -13,22 +13,63 @@ public final class Settings {
     private static final Pattern INT_TUPLE_REGEX = Pattern.compile("^\\d+,\\d+$");
 
     private static int renderTime = 16;
+    private static String renderMode = "raster";
+    private static boolean hudVisible = false;
     private static int simulationTime = 16;
+    private static int simulationRate = 0;
     private static Dimension windowSize = new Dimension(800, 600);
     private static int worldSize = 128;
+    private static int stepThreads = 1;
+    private static int tileSize = 256;
+    private static String kernel = "scalar";
+    private static String engine = "grid";
+    private static Rule rule = Rule.CONWAY;
+    private static int hashLifeMemory = 256;
+    private static int jumpPower = 10;
+    private static String periodDetection = "report";
+    private static int periodWindow = 120;
+    private static int rewindMemory = 64;
+    private static int fillDensity = 50;
+    private static String checkpointFile = "";
+    private static String statsFile = "";
+    private static int checkpointInterval = 0;
 
     private static int simulationButton = KeyEvent.VK_SPACE;
     private static int simulationStepButton = KeyEvent.VK_S;
     private static int clearFieldButton = KeyEvent.VK_V;
+    private static int jumpButton = KeyEvent.VK_J;
+    private static int loadButton = KeyEvent.VK_L;
+    private static int saveButton = KeyEvent.VK_K;
+    private static int hudButton = KeyEvent.VK_H;
+    private static int rewindButton = KeyEvent.VK_B;
+    private static int pasteButton = KeyEvent.VK_P;
 
     public static int getRenderTime() {
         return renderTime;
     }
 
+    public static String getRenderMode() {
+        return renderMode;
+    }
+
+    public static boolean isHudVisible() {
+        return hudVisible;
+    }
+
     public static int getSimulationTime() {
         return simulationTime;
     }
 
+    public static int getSimulationRate() {
+        return simulationRate;
+    }
+
+    /* Nanoseconds between generations while running, 0 runs as fast as possible */
+    public static long getSimulationPeriod() {
+        if (simulationRate > 0) return 1_000_000_000L / simulationRate;
+        return simulationTime * 1_000_000L;
+    }
+
     public static Dimension getWindowSize() {
         return windowSize;
     }
@@ -37,6 +78,64 @@ public final class Settings {
         return worldSize;
     }
 
+    public static int getStepThreads() {
+        return stepThreads;
+    }
+
+    public static int getTileSize() {
+        return tileSize;
+    }
+
+    public static String getKernel() {
+        return kernel;
+    }
+
+    public static String getEngine() {
+        return engine;
+    }
+
+    public static Rule getRule() {
+        return rule;
+    }
+
+    public static int getHashLifeMemory() {
+        return hashLifeMemory;
+    }
+
+    public static String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public static String getStatsFile() {
+        return statsFile;
+    }
+
+    public static int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public static String getPeriodDetection() {
+        return periodDetection;
+    }
+
+    public static int getPeriodWindow() {
+        return periodWindow;
+    }
+
+    /* Megabytes of rewind history, 0 keeps none */
+    public static int getRewindMemory() {
+        return rewindMemory;
+    }
+
+    /* Percent of cells a random fill brings to life */
+    public static int getFillDensity() {
+        return fillDensity;
+    }
+
+    public static int getJumpPower() {
+        return jumpPower;
+    }
+
     public static int getSimulationButton() {
         return simulationButton;
     }
@@ -49,6 +148,30 @@ public final class Settings {
         return clearFieldButton;
     }
 
+    public static int getJumpButton() {
+        return jumpButton;
+    }
+
+    public static int getLoadButton() {
+        return loadButton;
+    }
+
+    public static int getSaveButton() {
+        return saveButton;
+    }
+
+    public static int getHudButton() {
+        return hudButton;
+    }
+
+    public static int getRewindButton() {
+        return rewindButton;
+    }
+
+    public static int getPasteButton() {
+        return pasteButton;
+    }
+
     public static void loadFromFile(String path) {
         System.out.printf("Parsing settings file `%s`\n", path);
 
@@ -95,6 +218,13 @@ public final class Settings {
                     System.err.println("Bad int in `simulationTime`");
                 break;
             }
+            case "simulationRate": {
+                if (INT_REGEX.matcher(value).matches())
+                    simulationRate = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `simulationRate`");
+                break;
+            }
             case "worldSize": {
                 if (INT_REGEX.matcher(value).matches())
                     worldSize = Integer.parseInt(value);
@@ -102,6 +232,114 @@ public final class Settings {
                     System.err.println("Bad int in `worldSize`");
                 break;
             }
+            case "stepThreads": {
+                if (INT_REGEX.matcher(value).matches())
+                    stepThreads = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `stepThreads`");
+                break;
+            }
+            case "tileSize": {
+                if (INT_REGEX.matcher(value).matches())
+                    tileSize = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `tileSize`");
+                break;
+            }
+            case "renderMode": {
+                if (value.equals("raster") || value.equals("shapes"))
+                    renderMode = value;
+                else
+                    System.err.println("Bad value in `renderMode`");
+                break;
+            }
+            case "hud": {
+                if (value.equals("on") || value.equals("off"))
+                    hudVisible = value.equals("on");
+                else
+                    System.err.println("Bad value in `hud`");
+                break;
+            }
+            case "kernel": {
+                if (value.equals("scalar") || value.equals("vector"))
+                    kernel = value;
+                else
+                    System.err.println("Bad value in `kernel`");
+                break;
+            }
+            case "engine": {
+                if (value.equals("grid") || value.equals("hashlife") || value.equals("chunks") || value.equals("ltl") || value.equals("offheap"))
+                    engine = value;
+                else
+                    System.err.println("Bad value in `engine`");
+                break;
+            }
+            case "checkpointFile": {
+                checkpointFile = value;
+                break;
+            }
+            case "statsFile": {
+                statsFile = value;
+                break;
+            }
+            case "checkpointInterval": {
+                if (INT_REGEX.matcher(value).matches())
+                    checkpointInterval = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `checkpointInterval`");
+                break;
+            }
+            case "rule": {
+                try {
+                    rule = Rule.parse(value);
+                }
+                catch (IllegalArgumentException err) {
+                    System.err.printf("Bad value in `rule`: %s\n", err.getMessage());
+                }
+                break;
+            }
+            case "hashLifeMemory": {
+                if (INT_REGEX.matcher(value).matches())
+                    hashLifeMemory = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `hashLifeMemory`");
+                break;
+            }
+            case "jumpPower": {
+                if (INT_REGEX.matcher(value).matches())
+                    jumpPower = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `jumpPower`");
+                break;
+            }
+            case "periodDetection": {
+                if (value.equals("off") || value.equals("report") || value.equals("pause"))
+                    periodDetection = value;
+                else
+                    System.err.println("Bad value in `periodDetection`");
+                break;
+            }
+            case "periodWindow": {
+                if (INT_REGEX.matcher(value).matches())
+                    periodWindow = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `periodWindow`");
+                break;
+            }
+            case "rewindMemory": {
+                if (INT_REGEX.matcher(value).matches())
+                    rewindMemory = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `rewindMemory`");
+                break;
+            }
+            case "fillDensity": {
+                if (INT_REGEX.matcher(value).matches() && Integer.parseInt(value) <= 100)
+                    fillDensity = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `fillDensity`");
+                break;
+            }
             case "simulationButton": {
                 if (INT_REGEX.matcher(value).matches())
                     simulationButton = Integer.parseInt(value);
@@ -123,6 +361,48 @@ public final class Settings {
                     System.err.println("Bad int in `clearFieldButton`");
                 break;
             }
+            case "jumpButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    jumpButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `jumpButton`");
+                break;
+            }
+            case "loadButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    loadButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `loadButton`");
+                break;
+            }
+            case "saveButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    saveButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `saveButton`");
+                break;
+            }
+            case "hudButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    hudButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `hudButton`");
+                break;
+            }
+            case "rewindButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    rewindButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `rewindButton`");
+                break;
+            }
+            case "pasteButton": {
+                if (INT_REGEX.matcher(value).matches())
+                    pasteButton = Integer.parseInt(value);
+                else 
+                    System.err.println("Bad int in `pasteButton`");
+                break;
+            }
             case "windowSize": {
                 if (!INT_TUPLE_REGEX.matcher(value).matches()) {
                     System.err.println("Bad value in `windowSize`");
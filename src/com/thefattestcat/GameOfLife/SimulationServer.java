@@ -0,0 +1,329 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Runs a world without a window and streams every generation to viewers over
+ * a socket, as the rows the step changed (see DeltaFrame), with a keyframe of
+ * the whole world now and then for viewers to start from. The stepping thread
+ * only encodes frames and queues them; a network thread keeps the frames since
+ * the last keyframe and writes them to every viewer without blocking. A viewer
+ * that can't keep up gets the frames it missed xored into one, so it skips
+ * generations rather than holding up the simulation or the other viewers.
+ * When the network thread itself falls behind, the stepping thread stops
+ * encoding until it catches up and then sends a keyframe.
+ *
+ * serve <pattern|checkpoint> [<port>|<socket path>]
+ */
+final class SimulationServer {
+    // frames queued for the network thread before the stepping thread stops encoding
+    private static final int MAX_QUEUED = 256;
+    // deltas since the keyframe past which a new one is sent, whatever its own size
+    private static final long MIN_LOG_BYTES = 1 << 20;
+
+    private final CellWorld world;
+    private final LifeEngine engine;
+    private final String address;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    // from the stepping thread to the network thread
+    private final ConcurrentLinkedQueue<byte[]> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile int viewers = 0;
+    private volatile boolean keyframeWanted = true;
+
+    // only for the stepping thread
+    private final RowEncoder rows = new RowEncoder();
+    private WorldSnapshot snapshot;
+    private long keyframeGeneration, keyframeBytes, deltaBytes;
+
+    // only for the network thread: the last keyframe and the deltas after it, frame `firstSeq` first
+    private final ArrayList<byte[]> log = new ArrayList<>();
+    private long firstSeq = 0;
+    private final RowEncoder merged = new RowEncoder();
+
+    private SimulationServer(CellWorld world, String address) throws IOException {
+        this.world = world;
+        this.engine = world.getEngine();
+        this.address = address;
+
+        selector = Selector.open();
+        server = bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    static void run(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: serve <pattern> [<port>|<socket path>]");
+            System.err.println("  pattern is glider, rpentomino, acorn, gosper, soup:<percent>[:<seed>] or a .rle, .lif, .cells or .ckpt file");
+            System.err.printf("  viewers connect with `view`, to port %d on this machine by default\n", DeltaFrame.DEFAULT_PORT);
+            return;
+        }
+
+        final String address = args.length > 2 ? args[2] : Integer.toString(DeltaFrame.DEFAULT_PORT);
+        SimulationServer s;
+
+        try {
+            CellWorld world;
+            if (args[1].endsWith(".ckpt")) world = new CellWorld(Checkpoint.load(args[1], Settings.getEngine(), Settings.getWorldSize()));
+            else {
+                world = new CellWorld(Settings.getWorldSize());
+                Headless.load(world, args[1]);
+            }
+
+            s = new SimulationServer(world, address);
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot serve `%s` on `%s`: %s\n", args[1], address, err.getMessage());
+            return;
+        }
+
+        final String stats = Settings.getStatsFile();
+        if (!stats.isEmpty()) s.world.openStats(stats);
+
+        Thread network = new Thread(s::serve, "Delta server");
+        network.setDaemon(true);
+        network.start();
+
+        System.out.printf("Serving %s, rule %s, on %s\n", args[1], s.engine.getRule(), address);
+        s.simulate();
+    }
+
+    /* A port listens on the loopback interface, anything else is the path of a Unix socket */
+    private static ServerSocketChannel bind(String address) throws IOException {
+        if (address.matches("\\d+")) {
+            return ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", Integer.parseInt(address)));
+        }
+
+        Files.deleteIfExists(Path.of(address));
+        return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(address));
+    }
+
+    /* Where a viewer given `address` connects: a port, host:port, or the path of a Unix socket */
+    static SocketAddress connectAddress(String address) {
+        if (address.matches("\\d+")) return new InetSocketAddress("127.0.0.1", Integer.parseInt(address));
+        if (address.matches("[^/]+:\\d+")) {
+            final int colon = address.lastIndexOf(':');
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    /* Stepping thread: steps at the configured rate, as SimulationThread does, and queues a frame per generation */
+    private void simulate() {
+        long deadline = System.nanoTime();
+
+        while (true) {
+            final long period = Settings.getSimulationPeriod();
+            if (period > 0) {
+                final long now = System.nanoTime();
+                if (now < deadline) {
+                    LockSupport.parkNanos(this, deadline - now);
+                    continue;
+                }
+
+                deadline = Math.max(deadline + period, now);
+            }
+
+            world.step();
+            encode();
+        }
+    }
+
+    private void encode() {
+        if (viewers == 0) return;
+
+        // the network thread is behind, generations until it catches up go into the next keyframe
+        if (queued.get() >= MAX_QUEUED) {
+            keyframeWanted = true;
+            return;
+        }
+
+        final long generation = engine.getGeneration();
+        final boolean due = keyframeWanted || generation - keyframeGeneration >= Journal.KEYFRAME_INTERVAL
+                            || deltaBytes > Math.max(4 * keyframeBytes, MIN_LOG_BYTES);
+
+        rows.begin();
+        if (!due && engine.forEachChange(rows)) {
+            deltaBytes += rows.length;
+            send(DeltaFrame.frame(DeltaFrame.DELTA, generation, rows));
+            return;
+        }
+
+        keyframeWanted = false;
+        if (snapshot == null) snapshot = engine.newSnapshot();
+        engine.copyTo(snapshot);
+
+        rows.begin();
+        try {
+            rows.putTiles(snapshot);
+        }
+        catch (IOException err) {
+            throw new IllegalStateException(err);
+        }
+
+        keyframeGeneration = generation;
+        keyframeBytes = rows.length;
+        deltaBytes = 0;
+        send(DeltaFrame.frame(DeltaFrame.KEYFRAME, generation, rows));
+    }
+
+    private void send(byte[] frame) {
+        queued.incrementAndGet();
+        outbox.add(frame);
+        selector.wakeup();
+    }
+
+    /* Network thread: takes new viewers and frames, and writes to every viewer as much as it will take */
+    private void serve() {
+        final byte[] hello = DeltaFrame.hello(engine.getSize(), engine.getRule().getName());
+
+        while (true) {
+            try {
+                selector.select();
+            }
+            catch (IOException err) {
+                System.err.printf("Delta server stopped: %s\n", err.getMessage());
+                return;
+            }
+
+            for (byte[] frame; (frame = outbox.poll()) != null; ) {
+                queued.decrementAndGet();
+                append(frame);
+            }
+
+            for (final Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                final SelectionKey key = it.next();
+                it.remove();
+                if (key.isValid() && key.isAcceptable()) accept(hello);
+            }
+
+            for (final SelectionKey key : selector.keys()) {
+                if (key.isValid() && key.attachment() != null) write(key);
+            }
+        }
+    }
+
+    private void append(byte[] frame) {
+        if (DeltaFrame.typeOf(frame) == DeltaFrame.KEYFRAME) {
+            firstSeq += log.size();
+            log.clear();
+        }
+        // a delta without a keyframe before it is left over from viewers gone by
+        else if (log.isEmpty()) return;
+
+        log.add(frame);
+    }
+
+    private void accept(byte[] hello) {
+        try {
+            final SocketChannel channel = server.accept();
+            if (channel == null) return;
+
+            channel.configureBlocking(false);
+            channel.register(selector, 0, new Viewer(hello));
+        }
+        catch (IOException err) {
+            System.err.printf("Cannot accept a viewer on `%s`: %s\n", address, err.getMessage());
+            return;
+        }
+
+        // a keyframe from before there were viewers may have missed generations since
+        if (viewers == 0) {
+            firstSeq += log.size();
+            log.clear();
+            keyframeWanted = true;
+        }
+        viewers++;
+    }
+
+    /* Writes what is pending for the viewer of `key`, then the frames it hasn't had, merged into one */
+    private void write(SelectionKey key) {
+        final Viewer v = (Viewer) key.attachment();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        try {
+            while (true) {
+                if (v.out.hasRemaining()) {
+                    channel.write(v.out);
+                    if (v.out.hasRemaining()) break;
+                }
+
+                // the viewer starts from the last keyframe, and does again when it is so far behind one went by
+                final long from = Math.max(v.next, firstSeq), to = firstSeq + log.size();
+                if (log.isEmpty() || from == to) break;
+
+                v.out = ByteBuffer.wrap(from + 1 == to ? log.get((int) (from - firstSeq)) : merge(from, to));
+                v.next = to;
+            }
+
+            key.interestOps(v.out.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+        }
+        catch (IOException err) {
+            key.cancel();
+            try {
+                channel.close();
+            }
+            catch (IOException ignored) {
+            }
+            viewers--;
+        }
+    }
+
+    /* Frames `from` to `to` of the log as one, rows changed more than once xored together */
+    private byte[] merge(long from, long to) {
+        final HashMap<Long, Long> masks = new HashMap<>();
+        long generation = 0;
+
+        for (long i = from; i < to; i++) {
+            final DeltaFrame f = new DeltaFrame(log.get((int) (i - firstSeq)), 4);
+            generation = f.readVarint();
+            f.forEachRow((x, y, mask) -> masks.merge(y << 32 | (x >> 6) & 0xFFFFFFFFL, mask, (a, b) -> a ^ b));
+        }
+
+        final long[] keys = new long[masks.size()];
+        int n = 0;
+        for (final Map.Entry<Long, Long> e : masks.entrySet()) {
+            if (e.getValue() != 0) keys[n++] = e.getKey();
+        }
+        Arrays.sort(keys, 0, n);
+
+        merged.begin();
+        for (int i = 0; i < n; i++) merged.change((long) (int) keys[i] << 6, keys[i] >> 32, masks.get(keys[i]));
+
+        final boolean keyframe = DeltaFrame.typeOf(log.get((int) (from - firstSeq))) == DeltaFrame.KEYFRAME;
+        return DeltaFrame.frame(keyframe ? DeltaFrame.KEYFRAME : DeltaFrame.DELTA, generation, merged);
+    }
+
+    private static final class Viewer {
+        ByteBuffer out;
+        // sequence of the first frame it hasn't had, -1 before the first
+        long next = -1;
+
+        Viewer(byte[] hello) {
+            out = ByteBuffer.wrap(hello);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Owns the engine of a CellWorld: runs the commands sent from the UI and,
+ * while running, steps either as fast as possible or at the configured rate.
+ * Finished generations are handed to the renderer through snapshots.
+ */
+class SimulationThread extends Thread {
+    private final CellWorld world;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = false;
+
+    public SimulationThread(CellWorld world) {
+        super("Simulation");
+        this.world = world;
+        setDaemon(true);
+    }
+
+    public void submit(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(this);
+    }
+
+    public void setRunning(boolean r) {
+        running = r;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime();
+
+        while (!isInterrupted()) {
+            for (Runnable c; (c = commands.poll()) != null; ) c.run();
+
+            if (!running) {
+                world.publish(true);
+                LockSupport.park(this);
+                deadline = System.nanoTime();
+                continue;
+            }
+
+            long period = Settings.getSimulationPeriod();
+            if (period > 0) {
+                long now = System.nanoTime();
+                if (now < deadline) {
+                    LockSupport.parkNanos(this, deadline - now);
+                    continue;
+                }
+
+                // don't try to catch up after slow generations, just keep the rate from now on
+                deadline = Math.max(deadline + period, now);
+            }
+
+            world.step();
+            world.publish(false);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Lock-free triple buffer. The producer fills back() and publishes it, the
+ * consumer take()s it and reads front(), and the third buffer sits in between, so neither
+ * side ever waits for the other and the consumer always sees whole snapshots.
+ */
+class SnapshotBuffer<T> {
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0;
+    private int front = 1;
+
+    public SnapshotBuffer(T a, T b, T c) {
+        buffers = new Object[] { a, b, c };
+    }
+
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /* Whether the consumer picked up the last published buffer */
+    public boolean isConsumed() {
+        return (middle.get() & FRESH) == 0;
+    }
+
+    /* Switches to the last published buffer, null when nothing was published since the previous take */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        if ((middle.get() & FRESH) == 0) return null;
+
+        front = middle.getAndSet(front) & 3;
+        return (T) buffers[front];
+    }
+
+    /* Buffer the consumer took last */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,193 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs random soups until they settle and takes a census of what they leave.
+ * Every soup gets its own world and its own seed, derived from the base seed
+ * and the soup's number, so the census doesn't depend on how soups were shared
+ * between threads. Workers take soups from a shared counter and keep their own
+ * census, added up at the end. With several thread counts the same soups run
+ * once for each, to show how soups per second scale with cores.
+ *
+ * search <soups> [size=16] [percent=50] [threads=<n>[,<n>...]] [seed=<n>] [limit=<generations>] [engine=chunks|grid] [world=<size>] [top=<n>]
+ */
+final class SoupSearch {
+    // the population has to repeat with the same period for this many generations on top of two periods
+    private static final int SETTLE_GENERATIONS = 48;
+
+    private long soups;
+    private int size = 16, percent = 50;
+    private int[] threadCounts = { Runtime.getRuntime().availableProcessors() };
+    private long seed = 1;
+    private long limit = 100_000;
+    private String engine = "chunks";
+    private int worldSize = 256;
+    private int top = 20;
+
+    private SoupSearch() {}
+
+    static void run(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: search <soups> [size=16] [percent=50] [threads=<n>[,<n>...]] [seed=<n>] [limit=<generations>]");
+            System.err.println("              [engine=chunks|grid] [world=<size>] [top=<n>]");
+            System.err.println("  soups of size x size cells run until their population repeats, or for limit generations");
+            System.err.println("  grid worlds are world x size cells with the soup in the middle, chunks have no border");
+            return;
+        }
+
+        SoupSearch s = new SoupSearch();
+
+        try {
+            s.soups = Long.parseLong(args[1]);
+            for (int i = 2; i < args.length; i++) s.parseArg(args[i]);
+        }
+        catch (NumberFormatException err) {
+            System.err.printf("Bad search argument: %s\n", err.getMessage());
+            return;
+        }
+
+        if (!s.engine.equals("chunks") && !s.engine.equals("grid")) {
+            System.err.printf("Bad search engine `%s`, soups run on chunks or grid\n", s.engine);
+            return;
+        }
+        if (s.engine.equals("grid") && s.size > s.worldSize) {
+            System.err.printf("Soups of %d cells don't fit a world of %d\n", s.size, s.worldSize);
+            return;
+        }
+
+        s.runAll();
+    }
+
+    private void parseArg(String arg) {
+        if (arg.startsWith("size=")) size = Integer.parseInt(arg.substring(5));
+        else if (arg.startsWith("percent=")) percent = Integer.parseInt(arg.substring(8));
+        else if (arg.startsWith("seed=")) seed = Long.parseLong(arg.substring(5));
+        else if (arg.startsWith("limit=")) limit = Long.parseLong(arg.substring(6));
+        else if (arg.startsWith("engine=")) engine = arg.substring(7);
+        else if (arg.startsWith("world=")) worldSize = Integer.parseInt(arg.substring(6));
+        else if (arg.startsWith("top=")) top = Integer.parseInt(arg.substring(4));
+        else if (arg.startsWith("threads=")) {
+            String[] parts = arg.substring(8).split(",");
+            threadCounts = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) threadCounts[i] = Integer.parseInt(parts[i]);
+        }
+        else throw new NumberFormatException("unknown argument " + arg);
+    }
+
+    private void runAll() {
+        System.out.printf("%d soups of %d x %d at %d%%, %s, rule %s\n", soups, size, size, percent, engine, Settings.getRule());
+        System.out.printf("%8s %10s %12s %8s %10s\n", "threads", "seconds", "soups/s", "speedup", "unsettled");
+
+        Census census = null;
+        double base = 0;
+
+        for (final int threads : threadCounts) {
+            final Census c = new Census(Settings.getRule());
+
+            final long start = System.nanoTime();
+            final long unsettled = runSoups(Math.max(1, threads), c);
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            if (unsettled < 0) return;
+
+            final double rate = soups / seconds;
+            if (base == 0) base = rate;
+
+            System.out.printf("%8d %10.3f %12.1f %7.2fx %10d\n", threads, seconds, rate, rate / base, unsettled);
+            census = c;
+        }
+
+        System.out.printf("\n%d objects\n", census.getObjects());
+
+        int shown = 0;
+        for (final Map.Entry<String, Long> e : census.sorted()) {
+            if (shown++ == top) break;
+            System.out.printf("%12d  %s\n", e.getValue(), e.getKey());
+        }
+    }
+
+    /* Runs every soup on `threads` workers into `census`, returns how many didn't settle or -1 when a worker failed */
+    private long runSoups(int threads, Census census) {
+        final AtomicLong next = new AtomicLong();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Soup search");
+            t.setDaemon(true);
+            return t;
+        });
+
+        final ArrayList<Future<Census>> workers = new ArrayList<>();
+        final AtomicLong unsettled = new AtomicLong();
+
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                final Census own = new Census(Settings.getRule());
+
+                for (long n; (n = next.getAndIncrement()) < soups; ) {
+                    if (!runSoup(n, own)) unsettled.incrementAndGet();
+                }
+
+                return own;
+            }));
+        }
+
+        try {
+            for (final Future<Census> w : workers) census.merge(w.get());
+        }
+        catch (InterruptedException | ExecutionException err) {
+            System.err.printf("Soup search failed: %s\n", err.getCause() == null ? err : err.getCause());
+            return -1;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        return unsettled.get();
+    }
+
+    /* Runs soup `n` until it settles and adds it to `census`, false when it didn't within the limit */
+    private boolean runSoup(long n, Census census) {
+        final LifeEngine world = engine.equals("grid") ? new GridEngine(worldSize, Settings.getRule()) : new ChunkEngine(Settings.getRule());
+        final long offset = engine.equals("grid") ? (worldSize - size) / 2 : 0;
+
+        PatternIO.soup(size, size, percent, new Random(Util.mix(seed + n)), (x, y) -> world.flip(x + offset, y + offset));
+
+        final int period = settle(world);
+        if (period == 0) return false;
+
+        census.add(world, period);
+        return true;
+    }
+
+    /*
+     * Steps `world` until its population has repeated with some period up to
+     * Census.MAX_PERIOD long enough to call it settled, and returns that
+     * period, 0 when it doesn't within the limit. Populations are compared
+     * rather than hashes, which gliders flying off keep changing.
+     */
+    private int settle(LifeEngine world) {
+        final int max = Census.MAX_PERIOD;
+        final long[] populations = new long[max + 1];
+        final int[] runs = new int[max + 1];
+
+        for (long g = 0; g <= limit; g++) {
+            final long population = world.getPopulation();
+
+            for (int p = 1; p <= max && p <= g; p++) {
+                if (populations[(int) ((g - p) % (max + 1))] != population) runs[p] = 0;
+                else if (++runs[p] >= SETTLE_GENERATIONS + 2 * p) return p;
+            }
+
+            populations[(int) (g % (max + 1))] = population;
+            world.step();
+        }
+
+        return 0;
+    }
+}
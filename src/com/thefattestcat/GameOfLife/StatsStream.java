@@ -0,0 +1,324 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Counters of every generation stepped, streamed to a file for looking at
+ * long runs afterwards. The stepping thread takes births, deaths and the box
+ * of the changed cells from the engine's change list, carries the population
+ * along from them, and puts the record in a bounded ring it shares with a
+ * writer thread through two counters, so neither ever waits on a lock. When
+ * the writer falls a whole ring behind, records are dropped and counted
+ * rather than holding up the simulation. Counts an engine can't give are -1,
+ * an empty box has its max below its min.
+ *
+ * Files ending in .csv get a header line and a line per generation. Anything
+ * else is binary, little endian: int magic, int version, int field count,
+ * then per generation each field as a zigzag varint of its difference from
+ * the generation before, a few bytes for a quiet one.
+ */
+class StatsStream {
+    static final String[] FIELDS = {
+        "generation", "population", "births", "deaths", "changed", "minX", "minY", "maxX", "maxY", "nanos"
+    };
+    static final int MAGIC = 0x534C4F47; // "GOLS"
+    static final int VERSION = 1;
+
+    private static final int CAPACITY = 1 << 16;
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private final String path;
+    private final boolean csv;
+    private final OutputStream out;
+
+    private final long[] ring = new long[CAPACITY * FIELDS.length];
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    // only for the stepping thread
+    private long population = -1;
+    private long births, deaths;
+    private final long[] box = new long[4];
+    private long dropped = 0;
+    private LifeEngine counted;
+    private final LifeEngine.ChangeVisitor counter = this::count;
+
+    // only for the writer
+    private final long[] last = new long[FIELDS.length];
+    private final byte[] buffer = new byte[1 << 16];
+    private int length = 0;
+    private long written = 0;
+    private IOException failure;
+
+    /* Opens `path` and starts the writer */
+    StatsStream(String path) throws IOException {
+        this.path = path;
+        csv = path.toLowerCase().endsWith(".csv");
+        out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+
+        if (csv) out.write((String.join(",", FIELDS) + "\n").getBytes(StandardCharsets.US_ASCII));
+        else {
+            putInt(MAGIC);
+            putInt(VERSION);
+            putInt(FIELDS.length);
+        }
+
+        writer = new Thread(this::drain, "Stats writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /* The world was set some other way than stepping, so the population is read again */
+    void resync() {
+        population = -1;
+    }
+
+    /* Records the generation `engine` just stepped to, in `nanos`; only for the thread that steps */
+    void add(LifeEngine engine, long nanos) {
+        final long before = population;
+        births = 0;
+        deaths = 0;
+        Util.clearBox(box);
+
+        counted = engine;
+        final boolean listed = engine.forEachChange(counter);
+
+        if (listed && before >= 0) population = before + births - deaths;
+        else population = engine.getPopulation();
+
+        if (!listed) {
+            final long changed = engine.getChangedCells();
+            final boolean known = changed >= 0 && before >= 0;
+
+            births = known ? (changed + population - before) / 2 : -1;
+            deaths = known ? (changed - population + before) / 2 : -1;
+        }
+
+        final long h = head.get();
+        if (h - tail.get() == CAPACITY) {
+            dropped++;
+            return;
+        }
+
+        final int i = (int) (h & (CAPACITY - 1)) * FIELDS.length;
+        ring[i] = engine.getGeneration();
+        ring[i + 1] = population;
+        ring[i + 2] = births;
+        ring[i + 3] = deaths;
+        ring[i + 4] = births < 0 ? engine.getChangedCells() : births + deaths;
+        ring[i + 5] = Util.isEmptyBox(box) ? 0 : box[0];
+        ring[i + 6] = Util.isEmptyBox(box) ? 0 : box[1];
+        ring[i + 7] = Util.isEmptyBox(box) ? -1 : box[2];
+        ring[i + 8] = Util.isEmptyBox(box) ? -1 : box[3];
+        ring[i + 9] = nanos;
+
+        // publishes the record to the writer
+        head.lazySet(h + 1);
+    }
+
+    /* Writes what is left and closes the file, returns how many generations were written */
+    long close() {
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+        }
+        catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) System.err.printf("Cannot write stats `%s`: %s\n", path, failure.getMessage());
+        if (dropped > 0) System.err.printf("Stats writer fell behind, %d generations not written to `%s`\n", dropped, path);
+
+        return written;
+    }
+
+    private void count(long x, long y, long mask) {
+        final long now = counted.getRow(x, y);
+        births += Long.bitCount(mask & now);
+        deaths += Long.bitCount(mask & ~now);
+
+        Util.widenBox(box, x + Long.numberOfTrailingZeros(mask), y, x + 63 - Long.numberOfLeadingZeros(mask), y);
+    }
+
+    /* Writer thread: takes whatever records are there in one batch, flushes once the ring runs dry */
+    private void drain() {
+        long t = tail.get();
+
+        while (true) {
+            final long h = head.get();
+
+            if (h == t) {
+                flush();
+                if (closed && head.get() == t) break;
+
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+
+            written += h - t;
+            for (; t < h; t++) {
+                final int i = (int) (t & (CAPACITY - 1)) * FIELDS.length;
+                if (csv) putLine(i);
+                else putRecord(i);
+            }
+
+            // frees the slots for the stepping thread
+            tail.lazySet(t);
+        }
+
+        try {
+            out.close();
+        }
+        catch (IOException err) {
+            if (failure == null) failure = err;
+        }
+    }
+
+    private void putLine(int i) {
+        reserve(FIELDS.length * 21);
+
+        for (int f = 0; f < FIELDS.length; f++) {
+            if (f > 0) buffer[length++] = ',';
+            // an empty box is left blank
+            if (f >= 5 && f <= 8 && ring[i + 7] < ring[i + 5]) continue;
+
+            putDecimal(ring[i + f]);
+        }
+        buffer[length++] = '\n';
+    }
+
+    private void putRecord(int i) {
+        reserve(FIELDS.length * 10);
+
+        for (int f = 0; f < FIELDS.length; f++) {
+            final long d = ring[i + f] - last[f];
+            last[f] = ring[i + f];
+
+            for (long v = d << 1 ^ d >> 63; ; v >>>= 7) {
+                if ((v & ~0x7FL) == 0) {
+                    buffer[length++] = (byte) v;
+                    break;
+                }
+                buffer[length++] = (byte) (v | 0x80);
+            }
+        }
+    }
+
+    private void putDecimal(long v) {
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) {
+                for (final byte b : Long.toString(v).getBytes(StandardCharsets.US_ASCII)) buffer[length++] = b;
+                return;
+            }
+
+            buffer[length++] = '-';
+            v = -v;
+        }
+
+        final int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+
+        for (int a = start, b = length - 1; a < b; a++, b--) {
+            final byte c = buffer[a];
+            buffer[a] = buffer[b];
+            buffer[b] = c;
+        }
+    }
+
+    private void putInt(int v) throws IOException {
+        for (int s = 0; s < 32; s += 8) out.write(v >>> s);
+    }
+
+    /* Makes room for `n` more bytes, writing out the buffer when it is too full */
+    private void reserve(int n) {
+        if (length + n > buffer.length) flush();
+    }
+
+    private void flush() {
+        if (length == 0) return;
+
+        try {
+            if (failure == null) {
+                out.write(buffer, 0, length);
+                out.flush();
+            }
+        }
+        catch (IOException err) {
+            // keep draining so the simulation never waits, the error is reported on close
+            failure = err;
+        }
+
+        length = 0;
+    }
+
+    /* Turns a binary stats file into CSV on `to` */
+    static void toCsv(String from, PrintStream to) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(from))) {
+            if (readInt(in) != MAGIC) throw new IOException("not a stats file");
+            if (readInt(in) != VERSION) throw new IOException("unknown stats version");
+
+            final int fields = readInt(in);
+            if (fields != FIELDS.length) throw new IOException("unexpected field count " + fields);
+
+            to.println(String.join(",", FIELDS));
+
+            final long[] values = new long[fields];
+            final StringBuilder sb = new StringBuilder();
+
+            while (true) {
+                final int first = in.read();
+                if (first < 0) break;
+
+                for (int f = 0; f < fields; f++) {
+                    final long v = readVarint(in, f == 0 ? first : in.read());
+                    values[f] += v >>> 1 ^ -(v & 1);
+                }
+
+                sb.setLength(0);
+                for (int f = 0; f < fields; f++) {
+                    if (f > 0) sb.append(',');
+                    if (f < 5 || f > 8 || values[7] >= values[5]) sb.append(values[f]);
+                }
+                to.println(sb);
+            }
+        }
+    }
+
+    private static long readVarint(InputStream in, int b) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7, b = in.read()) {
+            if (b < 0) throw new EOFException("stats file ends inside a record");
+
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        int v = 0;
+        for (int s = 0; s < 32; s += 8) {
+            final int b = in.read();
+            if (b < 0) throw new EOFException("stats file too short");
+            v |= b << s;
+        }
+
+        return v;
+    }
+}
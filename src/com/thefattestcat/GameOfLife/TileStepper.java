@@ -0,0 +1,113 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Steps the whole grid at once, split in tiles that are computed in parallel.
+ * Tiles only read the previous generation and only write their own words of
+ * the next one, so the result does not depend on scheduling. Changes are
+ * collected per tile and merged in tile order afterwards.
+ */
+class TileStepper {
+    private final BitGrid grid;
+    private final RowKernel kernel;
+    private final ForkJoinPool pool;
+    private long[] spare;
+
+    private final int tileWords, tileRows;
+    private final int tilesX, tileCount;
+    private final TileChanges[] tileChanges;
+
+    public TileStepper(BitGrid grid, RowKernel kernel, int threads, int tileSize) {
+        this.grid = grid;
+        this.kernel = kernel;
+        pool = new ForkJoinPool(threads);
+        spare = new long[grid.getWordCount()];
+
+        // whole vectors of words per tile row
+        final int lanes = kernel.getLanes();
+        tileWords = (Math.max(1, (tileSize + 63) >>> 6) + lanes - 1) / lanes * lanes;
+        tileRows = Math.max(1, tileSize);
+
+        tilesX = (grid.getWordsPerRow() + tileWords - 1) / tileWords;
+        int tilesY = (grid.getSize() + tileRows - 1) / tileRows;
+        tileCount = tilesX * tilesY;
+
+        tileChanges = new TileChanges[tileCount];
+        for (int i = 0; i < tileCount; i++) tileChanges[i] = new TileChanges();
+    }
+
+    public void step(UpdateBuffer out) {
+        pool.invoke(new TileTask(grid.getWords(), spare, 0, tileCount));
+        spare = grid.swapWords(spare);
+
+        for (final TileChanges tc : tileChanges) {
+            for (int i = 0; i < tc.count; i++) out.putChange(tc.indices[i], tc.masks[i]);
+        }
+    }
+
+    private void stepTile(long[] src, long[] dst, int tile) {
+        final int wpr = grid.getWordsPerRow();
+
+        int fromX = (tile % tilesX) * tileWords;
+        int toX = Math.min(fromX + tileWords, wpr);
+        int fromY = (tile / tilesX) * tileRows;
+        int toY = Math.min(fromY + tileRows, grid.getSize());
+
+        TileChanges tc = tileChanges[tile];
+        tc.count = 0;
+
+        for (int y = fromY; y < toY; y++) {
+            kernel.step(src, dst, y, fromX, toX);
+
+            for (int w = y * wpr + fromX, end = y * wpr + toX; w < end; w++) {
+                long diff = src[w] ^ dst[w];
+                if (diff != 0) tc.add(w, diff);
+            }
+        }
+    }
+
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] src, dst;
+        private final int from, to;
+
+        TileTask(long[] src, long[] dst, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                stepTile(src, dst, from);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(src, dst, from, mid), new TileTask(src, dst, mid, to));
+        }
+    }
+}
+
+class TileChanges {
+    int[] indices = new int[64];
+    long[] masks = new long[64];
+    int count = 0;
+
+    void add(int w, long mask) {
+        if (count == indices.length) {
+            indices = Arrays.copyOf(indices, count * 2);
+            masks = Arrays.copyOf(masks, count * 2);
+        }
+
+        indices[count] = w;
+        masks[count] = mask;
+        count++;
+    }
+}
@@ -0,0 +1,78 @@
+package com.thefattestcat.GameOfLife;
+
+import java.util.Arrays;
+
+/*
+ * Word indices to recompute in a generation plus the words that changed, as
+ * xor masks. Duplicates are filtered through a bitmap with one bit per word,
+ * which is cleared by walking the queue, so reset is linear in what was added
+ * and nothing is allocated once the arrays have grown to the working size.
+ */
+class UpdateBuffer {
+    private final long[] queued;
+    private final int capacity;
+
+    private int[] queue = new int[256];
+    private int size = 0;
+
+    private int[] changeIndices = new int[256];
+    private long[] changeMasks = new long[256];
+    private int changeCount = 0;
+
+    public UpdateBuffer(int capacity) {
+        this.capacity = capacity;
+        queued = new long[(capacity + 63) >>> 6];
+    }
+
+    public void reset() {
+        for (int i = 0; i < size; i++) queued[queue[i] >>> 6] = 0;
+
+        size = 0;
+        changeCount = 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void add(int w) {
+        long bit = 1L << w;
+        if ((queued[w >>> 6] & bit) != 0) return;
+
+        queued[w >>> 6] |= bit;
+
+        if (size == queue.length) queue = Arrays.copyOf(queue, size * 2);
+        queue[size++] = w;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return queue[i];
+    }
+
+    public void putChange(int w, long mask) {
+        if (changeCount == changeIndices.length) {
+            changeIndices = Arrays.copyOf(changeIndices, changeCount * 2);
+            changeMasks = Arrays.copyOf(changeMasks, changeCount * 2);
+        }
+
+        changeIndices[changeCount] = w;
+        changeMasks[changeCount] = mask;
+        changeCount++;
+    }
+
+    public int changeCount() {
+        return changeCount;
+    }
+
+    public int getChangeIndex(int i) {
+        return changeIndices[i];
+    }
+
+    public long getChangeMask(int i) {
+        return changeMasks[i];
+    }
+}
@@ -8,4 +8,37 @@ public class Util {
     public static double ceilAlign(double v, double a) {
         return Math.ceil( v / a ) * a;
     }
+
+    /* Boxes are minX, minY, maxX, maxY with both ends included, empty when minX > maxX */
+    public static void clearBox(long[] box) {
+        box[0] = box[1] = Long.MAX_VALUE;
+        box[2] = box[3] = Long.MIN_VALUE;
+    }
+
+    public static boolean isEmptyBox(long[] box) {
+        return box[0] > box[2];
+    }
+
+    /* Scrambles the bits of `z`, the splitmix64 finalizer */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+     * Zobrist key of `value` at position `p`. World hashes XOR the keys of old
+     * and new values as cells change, so they hash what differs from empty
+     * space and an empty world hashes to 0.
+     */
+    public static long zobrist(long p, long value) {
+        return mix(p * 0x9E3779B97F4A7C15L + value);
+    }
+
+    public static void widenBox(long[] box, long minX, long minY, long maxX, long maxY) {
+        if (minX < box[0]) box[0] = minX;
+        if (minY < box[1]) box[1] = minY;
+        if (maxX > box[2]) box[2] = maxX;
+        if (maxY > box[3]) box[3] = maxY;
+    }
 }
@@ -0,0 +1,119 @@
+package com.thefattestcat.GameOfLife;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Row kernel on the JDK Vector API, the full adders of Rule.nextWord applied
+ * to as many consecutive words of a row as the CPU has lanes (4 with AVX2, 8
+ * with AVX-512). The neighbours across word edges come from the same row
+ * loaded again one word to the left and one to the right. Words whose loads
+ * would leave the row, at both ends, go through the scalar kernel.
+ *
+ * Needs `--add-modules jdk.incubator.vector` at compile and run time,
+ * RowKernel.of() falls back to the scalar kernel without it.
+ */
+class VectorKernel implements RowKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private final BitGrid grid;
+    private final boolean conway;
+    // -1 where a count leads to a live cell, as in Rule: 0..8 for dead centres, 9..17 for live ones
+    private final long[] masks = new long[18];
+
+    VectorKernel(BitGrid grid) {
+        this.grid = grid;
+
+        final Rule rule = grid.getRule();
+        conway = rule.isConway();
+
+        for (int n = 0; n <= 8; n++) {
+            masks[n] = rule.isBirth(n) ? -1L : 0;
+            masks[9 + n] = rule.isSurvival(n) ? -1L : 0;
+        }
+    }
+
+    @Override
+    public int getLanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void step(long[] src, long[] dst, int y, int fromX, int toX) {
+        final int wpr = grid.getWordsPerRow(), size = grid.getSize();
+
+        // lanes read a word past both ends, the last word of a row is masked and the outer rows have nothing above or below
+        final int start = Math.max(fromX, 1);
+        final int end = start + Math.max(0, Math.min(toX, wpr - 1) - start) / SPECIES.length() * SPECIES.length();
+
+        if (start >= end || y == 0 || y == size - 1) {
+            grid.stepWords(src, dst, y, fromX, toX);
+            return;
+        }
+
+        if (fromX < start) grid.stepWords(src, dst, y, fromX, start);
+
+        final int row = y * wpr, up = row - wpr, down = row + wpr;
+        for (int wx = start; wx < end; wx += SPECIES.length()) {
+            final LongVector u = LongVector.fromArray(SPECIES, src, up + wx);
+            final LongVector c = LongVector.fromArray(SPECIES, src, row + wx);
+            final LongVector d = LongVector.fromArray(SPECIES, src, down + wx);
+
+            final LongVector uw = west(u, LongVector.fromArray(SPECIES, src, up + wx - 1));
+            final LongVector ue = east(u, LongVector.fromArray(SPECIES, src, up + wx + 1));
+            final LongVector cw = west(c, LongVector.fromArray(SPECIES, src, row + wx - 1));
+            final LongVector ce = east(c, LongVector.fromArray(SPECIES, src, row + wx + 1));
+            final LongVector dw = west(d, LongVector.fromArray(SPECIES, src, down + wx - 1));
+            final LongVector de = east(d, LongVector.fromArray(SPECIES, src, down + wx + 1));
+
+            // the full adders of Rule.nextWord
+            final LongVector ux = uw.lanewise(VectorOperators.XOR, ue), us = ux.lanewise(VectorOperators.XOR, u);
+            final LongVector uc = uw.and(ue).or(ux.and(u));
+            final LongVector dx = dw.lanewise(VectorOperators.XOR, de), ds = dx.lanewise(VectorOperators.XOR, d);
+            final LongVector dc = dw.and(de).or(dx.and(d));
+            final LongVector ms = cw.lanewise(VectorOperators.XOR, ce), mc = cw.and(ce);
+
+            final LongVector ox = us.lanewise(VectorOperators.XOR, ms), ones = ox.lanewise(VectorOperators.XOR, ds);
+            final LongVector carry = us.and(ms).or(ox.and(ds));
+            final LongVector tx = uc.lanewise(VectorOperators.XOR, mc), twos = tx.lanewise(VectorOperators.XOR, dc);
+            final LongVector fours = uc.and(mc).or(tx.and(dc));
+
+            final LongVector two = twos.lanewise(VectorOperators.XOR, carry), fourCarry = twos.and(carry);
+
+            // each branch stores its own result, vectors merged from two branches would be boxed
+            if (conway) {
+                two.and(fours.or(fourCarry).not()).and(ones.or(c)).intoArray(dst, row + wx);
+                continue;
+            }
+
+            final LongVector four = fours.lanewise(VectorOperators.XOR, fourCarry), eights = fours.and(fourCarry);
+
+            final LongVector n0 = ones.or(two).not(), n1 = ones.and(two.not()), n2 = two.and(ones.not()), n3 = ones.and(two);
+            final LongVector lo = four.or(eights).not();
+            final LongVector born = c.not();
+
+            n0.and(lo).and(born.and(masks[0]).or(c.and(masks[9])))
+                .or(n1.and(lo).and(born.and(masks[1]).or(c.and(masks[10]))))
+                .or(n2.and(lo).and(born.and(masks[2]).or(c.and(masks[11]))))
+                .or(n3.and(lo).and(born.and(masks[3]).or(c.and(masks[12]))))
+                .or(n0.and(four).and(born.and(masks[4]).or(c.and(masks[13]))))
+                .or(n1.and(four).and(born.and(masks[5]).or(c.and(masks[14]))))
+                .or(n2.and(four).and(born.and(masks[6]).or(c.and(masks[15]))))
+                .or(n3.and(four).and(born.and(masks[7]).or(c.and(masks[16]))))
+                .or(eights.and(born.and(masks[8]).or(c.and(masks[17]))))
+                .intoArray(dst, row + wx);
+        }
+
+        if (end < toX) grid.stepWords(src, dst, y, end, toX);
+    }
+
+    /* Cells one to the west of each cell of `v`, `left` being the words before */
+    private static LongVector west(LongVector v, LongVector left) {
+        return v.lanewise(VectorOperators.LSHL, 1).or(left.lanewise(VectorOperators.LSHR, 63));
+    }
+
+    private static LongVector east(LongVector v, LongVector right) {
+        return v.lanewise(VectorOperators.LSHR, 1).or(right.lanewise(VectorOperators.LSHL, 63));
+    }
+}
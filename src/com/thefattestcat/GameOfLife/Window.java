@@ -10,7 +10,7 @@ public class Window extends JFrame {
     
     public Window(Dimension size) {
         setTitle("Game Of Life");
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
         worldRenderer = new WorldRenderer();
         add(worldRenderer);
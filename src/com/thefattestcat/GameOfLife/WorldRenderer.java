@@ -1,10 +1,14 @@
 package com.thefattestcat.GameOfLife;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
@@ -12,14 +16,51 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.swing.JFileChooser;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 public class WorldRenderer extends JPanel {
     private Camera camera;
     private CellWorld cellWorld;
 
+    // grid lines drawn for the last view, redrawn only when the view changes
+    private BufferedImage gridOverlay;
+    private double gridX = Double.NaN, gridY, gridScale;
+
+    // last composed frame and the view it was drawn for, only parts of it are redrawn while the view stays
+    private BufferedImage frame;
+    private double frameX = Double.NaN, frameY, frameScale;
+    private boolean framePaused;
+    private String frameMode;
+
+    // cells of the view as drawn in the frame, rows of `drawnWords` snapshot rows from (drawnX, drawnY)
+    private static final int TILE = 16;
+    private long[] drawnRows = new long[0];
+    private long drawnX, drawnY;
+    private int drawnWords, drawnHeight;
+
+    private final long[] changes = new long[4];
+    private final long[] edits = new long[4];
+
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // metrics overlay, drawn over the frame on every paint and refreshed every tick while shown
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+    private boolean hudVisible = Settings.isHudVisible();
+    private final Rectangle hudBounds = new Rectangle();
+
+    // cells of the rectangle a drag is picking, outlined over the frame
+    private final long[] selection = new long[4];
+    private Color selectionColor;
+
     public WorldRenderer() {
+        Util.clearBox(selection);
+
         MouseHandler mh = new MouseHandler(this);
         addKeyListener(new KeyboardHandler(this));
 
@@ -44,61 +85,327 @@ public class WorldRenderer extends JPanel {
         cellWorld = w;
     }
 
+    /* Queues refresh() on the event thread, a tick that comes while the last one is still queued is dropped */
+    public void requestRefresh() {
+        if (!refreshQueued.compareAndSet(false, true)) {
+            if (cellWorld != null) cellWorld.getMetrics().recordDroppedFrame();
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            refreshQueued.set(false);
+            refresh();
+        });
+    }
+
+    protected void toggleHud() {
+        hudVisible = !hudVisible;
+        repaint();
+    }
+
+    /* Outlines the cells between corners `a` and `b` until clearSelection() */
+    protected void setSelection(Point a, Point b, Color color) {
+        Util.clearBox(selection);
+        Util.widenBox(selection, Math.min(a.x, b.x), Math.min(a.y, b.y), Math.max(a.x, b.x), Math.max(a.y, b.y));
+        selectionColor = color;
+        repaint();
+    }
+
+    protected void clearSelection() {
+        Util.clearBox(selection);
+        repaint();
+    }
+
+    /*
+     * Called every render tick on the event thread. After the view changed the
+     * whole frame is drawn again. Otherwise only the 16x16 cell tiles that differ
+     * from the frame, looked for inside the box the engine reports as changed,
+     * and the edited user points are; when nothing changed nothing is drawn.
+     */
+    public void refresh() {
+        if (cellWorld == null || camera == null || getWidth() <= 0 || getHeight() <= 0) return;
+
+        final long start = System.nanoTime();
+        redrawChanges();
+        cellWorld.getMetrics().recordFrame(System.nanoTime() - start);
+
+        if (hudVisible) repaint(hudBounds);
+    }
+
+    private void redrawChanges() {
+        Util.clearBox(changes);
+        Util.clearBox(edits);
+
+        WorldSnapshot s = cellWorld.takeSnapshot();
+        if (s != null) Util.widenBox(changes, s.changed[0], s.changed[1], s.changed[2], s.changed[3]);
+        cellWorld.collectEdits(edits);
+
+        if (isViewChanged()) {
+            redrawAll();
+            repaint();
+            return;
+        }
+
+        if (!Util.isEmptyBox(changes)) {
+            if (DensityPyramid.blockFor(camera.scale) > 1) redrawCells(changes[0], changes[1], changes[2], changes[3]);
+            else redrawChangedTiles(changes);
+        }
+        if (!Util.isEmptyBox(edits)) redrawCells(edits[0], edits[1], edits[2], edits[3]);
+    }
+
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
+        if (isViewChanged()) redrawAll();
+        g.drawImage(frame, 0, 0, null);
 
-        Graphics2D g2d = (Graphics2D) g.create();
-        Dimension d = getSize();
+        if (!Util.isEmptyBox(selection)) {
+            Rectangle r = toScreen(selection[0], selection[1], selection[2], selection[3]);
+            g.setColor(selectionColor);
+            g.drawRect(r.x, r.y, r.width - 1, r.height - 1);
+        }
+
+        if (hudVisible) drawHud(g);
+    }
+
+    private void drawHud(Graphics g) {
+        final Metrics m = cellWorld.getMetrics();
+        final long changed = m.getChangedCells(), allocated = m.getAllocatedBytesPerGeneration();
+        final double dense = m.getDenseFraction();
+
+        final String[] lines = {
+            String.format("generation  %d", m.getGeneration()),
+            String.format("population  %d", m.getPopulation()),
+            String.format("period      %s", m.getPeriod() == 0 ? "-" : Long.toString(m.getPeriod())),
+            String.format("gens/s      %.1f", m.getGenerationsPerSecond()),
+            String.format("step ms     %.3f p50  %.3f p99  %.3f max", m.getStepTimeP50(), m.getStepTimeP99(), m.getStepTimeMax()),
+            String.format("changed     %s", changed < 0 ? "-" : Long.toString(changed)),
+            String.format("dense       %s", dense < 0 ? "-" : String.format("%.0f%%", dense * 100)),
+            String.format("alloc/gen   %s", allocated < 0 ? "-" : allocated + " B"),
+            String.format("frame ms    %.3f mean  %.3f p99", m.getFrameTimeMean(), m.getFrameTimeP99()),
+            String.format("dropped     %d frames  %d gens", m.getDroppedFrames(), m.getSkippedGenerations()),
+            String.format("history     %d KB", m.getHistoryBytes() >> 10),
+        };
+
+        g.setFont(HUD_FONT);
+        final FontMetrics fm = g.getFontMetrics();
+
+        int width = 0;
+        for (final String l : lines) width = Math.max(width, fm.stringWidth(l));
+
+        hudBounds.setBounds(8, 8, width + 12, lines.length * fm.getHeight() + 8);
+
+        g.setColor(HUD_BACKGROUND);
+        g.fillRect(hudBounds.x, hudBounds.y, hudBounds.width, hudBounds.height);
+
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], hudBounds.x + 6, hudBounds.y + 4 + fm.getAscent() + i * fm.getHeight());
+        }
+    }
+
+    private void redrawAll() {
+        redraw(new Rectangle(0, 0, getWidth(), getHeight()));
+
+        // zoomed out to blocks the frame isn't compared cell by cell, the changed box is drawn again as a whole
+        if (DensityPyramid.blockFor(camera.scale) > 1) {
+            drawnWords = 0;
+            drawnHeight = 0;
+            return;
+        }
+
+        final int cs = Global.CELL_SIZE;
+        final double s = camera.scale;
+
+        drawnX = (long) Math.floor((camera.xPos - getWidth() / 2.0 / s) / cs);
+        drawnY = (long) Math.floor((camera.yPos - getHeight() / 2.0 / s) / cs);
+        drawnWords = (int) (((long) Math.ceil((camera.xPos + getWidth() / 2.0 / s) / cs) - drawnX + 64) >>> 6);
+        drawnHeight = (int) ((long) Math.ceil((camera.yPos + getHeight() / 2.0 / s) / cs) - drawnY + 1);
+
+        if (drawnRows.length < drawnWords * drawnHeight) drawnRows = new long[drawnWords * drawnHeight];
+
+        final WorldSnapshot snapshot = cellWorld.getSnapshot();
+        for (int j = 0; j < drawnHeight; j++) {
+            for (int k = 0; k < drawnWords; k++) drawnRows[j * drawnWords + k] = snapshot.getRow(drawnX + 64L * k, drawnY + j);
+        }
+    }
+
+    /* Compares the view inside `box` with the frame and redraws the tiles that differ, in horizontal runs */
+    private void redrawChangedTiles(long[] box) {
+        final WorldSnapshot snapshot = cellWorld.getSnapshot();
+
+        // clamp before subtracting, boxes may reach to infinity
+        long minX = Math.max(box[0], drawnX), maxX = Math.min(box[2], drawnX + 64L * drawnWords - 1);
+        long minY = Math.max(box[1], drawnY), maxY = Math.min(box[3], drawnY + drawnHeight - 1);
+        if (minX > maxX || minY > maxY) return;
+
+        int j0 = (int) (minY - drawnY) / TILE * TILE, j1 = (int) (maxY - drawnY) + 1;
+        int k0 = (int) (minX - drawnX) >> 6, k1 = ((int) (maxX - drawnX) >> 6) + 1;
+
+        for (int band = j0; band < j1; band += TILE) {
+            final int bandEnd = Math.min(band + TILE, drawnHeight);
+            long runStart = Long.MIN_VALUE;
+
+            for (int k = k0; k < k1; k++) {
+                long diff = 0;
+                for (int j = band; j < bandEnd; j++) {
+                    long row = snapshot.getRow(drawnX + 64L * k, drawnY + j);
+                    diff |= row ^ drawnRows[j * drawnWords + k];
+                    drawnRows[j * drawnWords + k] = row;
+                }
+
+                for (int t = 0; t < 64; t += TILE) {
+                    boolean changed = (diff >>> t & ((1L << TILE) - 1)) != 0;
+                    long x = drawnX + 64L * k + t;
+
+                    if (changed && runStart == Long.MIN_VALUE) runStart = x;
+                    if (!changed && runStart != Long.MIN_VALUE) {
+                        redrawCells(runStart, drawnY + band, x - 1, drawnY + bandEnd - 1);
+                        runStart = Long.MIN_VALUE;
+                    }
+                }
+            }
+
+            if (runStart != Long.MIN_VALUE) redrawCells(runStart, drawnY + band, drawnX + 64L * k1 - 1, drawnY + bandEnd - 1);
+        }
+    }
+
+    private void redrawCells(long minX, long minY, long maxX, long maxY) {
+        Rectangle r = toScreen(minX, minY, maxX, maxY);
+        if (r.isEmpty()) return;
+
+        redraw(r);
+        repaint(r);
+    }
+
+    private boolean isViewChanged() {
+        return frame == null || frame.getWidth() != getWidth() || frame.getHeight() != getHeight()
+            || camera.xPos != frameX || camera.yPos != frameY || camera.scale != frameScale
+            || cellWorld.isPaused() != framePaused || !Settings.getRenderMode().equals(frameMode);
+    }
+
+    /* Pixels covering the cells of the box inside the window, with room for the lines on their edges */
+    private Rectangle toScreen(long boxMinX, long boxMinY, long boxMaxX, long boxMaxY) {
+        final int cs = Global.CELL_SIZE;
+        final double s = camera.scale;
+
+        // clamp to the visible cells first, boxes may reach to infinity
+        long minX = (long) Math.floor((camera.xPos - getWidth() / 2.0 / s) / cs) - 1;
+        long minY = (long) Math.floor((camera.yPos - getHeight() / 2.0 / s) / cs) - 1;
+        long maxX = (long) Math.ceil((camera.xPos + getWidth() / 2.0 / s) / cs) + 1;
+        long maxY = (long) Math.ceil((camera.yPos + getHeight() / 2.0 / s) / cs) + 1;
+
+        long x0 = Math.max(boxMinX, minX), y0 = Math.max(boxMinY, minY);
+        long x1 = Math.min(boxMaxX, maxX), y1 = Math.min(boxMaxY, maxY);
+        if (x0 > x1 || y0 > y1) return new Rectangle();
+
+        int pad = (int) Math.ceil(s) + 1;
+        int px0 = (int) Math.floor(getWidth() / 2.0 + (x0 * cs - camera.xPos) * s) - pad;
+        int py0 = (int) Math.floor(getHeight() / 2.0 + (y0 * cs - camera.yPos) * s) - pad;
+        int px1 = (int) Math.ceil(getWidth() / 2.0 + ((x1 + 1) * cs - camera.xPos) * s) + pad;
+        int py1 = (int) Math.ceil(getHeight() / 2.0 + ((y1 + 1) * cs - camera.yPos) * s) + pad;
 
-        double w = d.getWidth(), h = d.getHeight();
-        double wh = w / 2, hh = h / 2;
+        return new Rectangle(px0, py0, px1 - px0, py1 - py0).intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    /* Draws the pixels of `r` in the frame again */
+    private void redraw(Rectangle r) {
+        final int w = getWidth(), h = getHeight();
+
+        if (frame == null || frame.getWidth() != w || frame.getHeight() != h) {
+            frame = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        }
 
-        double x = camera.xPos, y = camera.yPos, scaleInv = 1 / camera.scale;
+        frameX = camera.xPos;
+        frameY = camera.yPos;
+        frameScale = camera.scale;
+        framePaused = cellWorld.isPaused();
+        frameMode = Settings.getRenderMode();
 
-        g2d.setBackground(Color.BLACK);
-        g2d.clearRect(0, 0, (int) w, (int) h);
+        Graphics2D g = frame.createGraphics();
+        g.setClip(r);
+        g.setBackground(Color.BLACK);
+        g.clearRect(r.x, r.y, r.width, r.height);
 
-        g2d.translate(wh, hh);
+        // cells are drawn relative to the cell under the camera, so pixel coordinates stay small far from (0, 0)
+        long originX = (long) Math.floor(camera.xPos / Global.CELL_SIZE);
+        long originY = (long) Math.floor(camera.yPos / Global.CELL_SIZE);
+
+        double x = camera.xPos - originX * Global.CELL_SIZE, y = camera.yPos - originY * Global.CELL_SIZE;
+        double scaleInv = 1 / camera.scale;
+
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.translate(w / 2.0, h / 2.0);
         g2d.scale(camera.scale, camera.scale);
         g2d.translate(-x, -y);
 
-        double startX = x - wh * scaleInv, startY = y - hh * scaleInv, 
-               endX = x + wh * scaleInv, endY = y + hh * scaleInv;
+        double startX = x + (r.x - w / 2.0) * scaleInv, startY = y + (r.y - h / 2.0) * scaleInv,
+               endX = x + (r.x + r.width - w / 2.0) * scaleInv, endY = y + (r.y + r.height - h / 2.0) * scaleInv;
 
-        drawWorld(g2d, (int) startX, (int) startY, (int) endX, (int) endY);
+        drawCellWorld(g2d, originX, originY, (int) Math.floor(startX), (int) Math.floor(startY), (int) Math.ceil(endX), (int) Math.ceil(endY));
+        if (camera.scale >= Global.GRID_MIN_SCALE) drawGridOverlay(g, w, h);
+        drawBarrier(g2d, originX, originY, framePaused ? Color.RED : Color.YELLOW);
 
         g2d.dispose();
+        g.dispose();
     }
 
-    private void drawWorld(Graphics2D g2d, int startX, int startY, int endX, int endY) {
-        drawCellWorld(g2d, startX, startY, endX, endY);
-        drawGrid(g2d, startX, startY, endX, endY, Global.GRID_DARK, Global.GRID_LIGHT);
-        drawBarrier(g2d, cellWorld.isPaused() ? Color.RED : Color.YELLOW);
+    /* Blits the grid lines of the current view, drawing them again only after the camera moved */
+    private void drawGridOverlay(Graphics g, int w, int h) {
+        if (gridOverlay == null || gridOverlay.getWidth() != w || gridOverlay.getHeight() != h) {
+            gridOverlay = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            gridX = Double.NaN;
+        }
+
+        if (camera.xPos != gridX || camera.yPos != gridY || camera.scale != gridScale) {
+            gridX = camera.xPos;
+            gridY = camera.yPos;
+            gridScale = camera.scale;
+
+            Graphics2D g2d = gridOverlay.createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, w, h);
+            g2d.setComposite(AlphaComposite.SrcOver);
+
+            long originX = (long) Math.floor(camera.xPos / Global.CELL_SIZE);
+            long originY = (long) Math.floor(camera.yPos / Global.CELL_SIZE);
+            double x = camera.xPos - originX * Global.CELL_SIZE, y = camera.yPos - originY * Global.CELL_SIZE;
+            double hw = w / 2.0 / camera.scale, hh = h / 2.0 / camera.scale;
+
+            g2d.translate(w / 2.0, h / 2.0);
+            g2d.scale(camera.scale, camera.scale);
+            g2d.translate(-x, -y);
+
+            drawGrid(g2d, originX, originY, (int) (x - hw), (int) (y - hh), (int) (x + hw), (int) (y + hh), Global.GRID_DARK, Global.GRID_LIGHT);
+            g2d.dispose();
+        }
+
+        g.drawImage(gridOverlay, 0, 0, null);
     }
 
-    private void drawCellWorld(Graphics2D g2d, int startX, int startY, int endX, int endY) {
+    private void drawCellWorld(Graphics2D g2d, long originX, long originY, int startX, int startY, int endX, int endY) {
         if (cellWorld == null) return;
-        cellWorld.draw(g2d, startX, startY, endX, endY);
+        cellWorld.draw(g2d, DensityPyramid.blockFor(camera.scale), originX, originY, startX, startY, endX, endY);
     }
 
-    private void drawBarrier(Graphics2D g2d, Color col) {
+    private void drawBarrier(Graphics2D g2d, long originX, long originY, Color col) {
+        if (cellWorld.getSize() == 0) return;
+
         g2d.setColor(col);
-        int wc = Settings.getWorldSize() * Global.CELL_SIZE;
-        g2d.drawLine(0, 0, wc, 0);
-        g2d.drawLine(0, 0, 0, wc);
-        g2d.drawLine(0, wc, wc, wc);
-        g2d.drawLine(wc, 0, wc, wc);
+        int x0 = (int) (-originX * Global.CELL_SIZE), y0 = (int) (-originY * Global.CELL_SIZE);
+        int wc = cellWorld.getSize() * Global.CELL_SIZE;
+        g2d.drawLine(x0, y0, x0 + wc, y0);
+        g2d.drawLine(x0, y0, x0, y0 + wc);
+        g2d.drawLine(x0, y0 + wc, x0 + wc, y0 + wc);
+        g2d.drawLine(x0 + wc, y0, x0 + wc, y0 + wc);
     }
 
-    private void drawGrid(Graphics2D g2d, int startX, int startY, int endX, int endY, Color c1, Color c2) {
+    private void drawGrid(Graphics2D g2d, long originX, long originY, int startX, int startY, int endX, int endY, Color c1, Color c2) {
         int startGridX = (int) Util.ceilAlign(startX, Global.CELL_SIZE);
         int startGridY = (int) Util.ceilAlign(startY, Global.CELL_SIZE);
-        int m = Global.CELL_SIZE * 16;
 
         g2d.setColor(c1);
 
         for (int x = startGridX; x < endX; x += Global.CELL_SIZE) {
-            if (x % m != 0) {
+            if (Math.floorMod(originX + x / Global.CELL_SIZE, 16) != 0) {
                 g2d.drawLine(x, startY, x, endY);
             }
             else {
@@ -109,7 +416,7 @@ public class WorldRenderer extends JPanel {
         }
 
         for (int y = startGridY; y < endY; y += Global.CELL_SIZE) {
-            if (y % m != 0) {
+            if (Math.floorMod(originY + y / Global.CELL_SIZE, 16) != 0) {
                 g2d.drawLine(startX, y, endX, y);
             }
             else {
@@ -139,6 +446,10 @@ class MouseHandler implements MouseListener, MouseMotionListener, MouseWheelList
     private boolean isDragging = false;
     private BuildingMode buildingMode = BuildingMode.NONE;
 
+    // cell the stroke reached last, and the corner of a rectangle being picked
+    private Point lastCell, anchor;
+    private boolean randomFill;
+
     public MouseHandler(WorldRenderer wr) {
         this.wr = wr;
     }
@@ -199,19 +510,16 @@ class MouseHandler implements MouseListener, MouseMotionListener, MouseWheelList
             return;
         }
         if (buildingMode != BuildingMode.NONE) {
-            CellState st = buildingMode == BuildingMode.PLACING ? CellState.ACTIVE : CellState.INACTIVE;
             Point worldPos = getCellWorldPosition(e.getX(), e.getY());
-            CellWorld w = wr.getWorld();
 
-            CellState cell = w.get(worldPos.x, worldPos.y);
-
-            if (!w.hasUserPoint(worldPos)) {
-                if (cell != st) w.put(worldPos, st);
-            }
-            else {
-                if (buildingMode == BuildingMode.DESTROYING && cell == CellState.INACTIVE) w.put(worldPos, CellState.INACTIVE);
+            if (anchor != null) {
+                wr.setSelection(anchor, worldPos, getSelectionColor());
+                return;
             }
 
+            // events come further apart than cells when the mouse moves fast, the line between them fills the gap
+            wr.getWorld().stroke(lastCell, worldPos, getBuildingState());
+            lastCell = worldPos;
             return;
         }
         
@@ -250,30 +558,53 @@ class MouseHandler implements MouseListener, MouseMotionListener, MouseWheelList
         if (e.getButton() == 1 /* left button */) {
             CellWorld w = wr.getWorld();
             Point worldPos = getCellWorldPosition(e.getX(), e.getY());
-            int worldX = worldPos.x, worldY = worldPos.y;
 
-            CellState st = w.get(worldX, worldY);
+            CellState st = w.getEdited(worldPos.x, worldPos.y);
             if (st == null) return;
 
-            if (st == CellState.ACTIVE || w.hasUserPoint(worldPos)) {
-                w.put(worldPos, CellState.INACTIVE);
-                buildingMode = BuildingMode.DESTROYING;
-            }
-            else {
-                w.put(worldPos, CellState.ACTIVE);
-                buildingMode = BuildingMode.PLACING;
+            buildingMode = st == CellState.ACTIVE ? BuildingMode.DESTROYING : BuildingMode.PLACING;
+            lastCell = worldPos;
+
+            // with SHIFT the drag picks a rectangle to fill or clear, with CTRL one to fill at random
+            if ((e.isShiftDown() || e.isControlDown()) && w.isPaused()) {
+                anchor = worldPos;
+                randomFill = e.isControlDown();
+                wr.setSelection(anchor, worldPos, getSelectionColor());
+                return;
             }
 
+            w.put(worldPos, getBuildingState());
             return;
         }
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        if (e.getButton() == 1) buildingMode = BuildingMode.NONE;
+        if (e.getButton() == 1) {
+            if (anchor != null && buildingMode != BuildingMode.NONE) {
+                Point worldPos = getCellWorldPosition(e.getX(), e.getY());
+
+                if (randomFill) wr.getWorld().randomFill(anchor, worldPos, Settings.getFillDensity());
+                else wr.getWorld().fill(anchor, worldPos, getBuildingState());
+
+                wr.clearSelection();
+            }
+
+            anchor = null;
+            buildingMode = BuildingMode.NONE;
+        }
         else if (e.getButton() == 3) isDragging = false;
     }
 
+    private CellState getBuildingState() {
+        return buildingMode == BuildingMode.PLACING ? CellState.ACTIVE : CellState.INACTIVE;
+    }
+
+    private Color getSelectionColor() {
+        if (randomFill) return Color.WHITE;
+        return buildingMode == BuildingMode.PLACING ? CellWorld.PLACE_COLOR : CellWorld.DESTROY_COLOR;
+    }
+
 }
 
 class KeyboardHandler implements KeyListener {
@@ -289,10 +620,50 @@ class KeyboardHandler implements KeyListener {
             wr.getWorld().setPaused(!wr.getWorld().isPaused());
         }
         else if (e.getKeyCode() == Settings.getClearFieldButton()) {
-            wr.getWorld().clear();
+            wr.getWorld().requestClear();
         }
         else if (e.getKeyCode() == Settings.getSimulationStepButton()) {
-            if (wr.getWorld().isPaused()) wr.getWorld().step();
+            if (wr.getWorld().isPaused()) wr.getWorld().requestStep();
+        }
+        else if (e.getKeyCode() == Settings.getJumpButton()) {
+            if (wr.getWorld().isPaused()) wr.getWorld().requestJump(Settings.getJumpPower());
+        }
+        else if (e.getKeyCode() == Settings.getRewindButton()) {
+            if (!wr.getWorld().isPaused()) return;
+
+            if (e.isShiftDown()) wr.getWorld().requestRewind(1L << Settings.getJumpPower());
+            else wr.getWorld().requestUndo();
+        }
+        else if (e.getKeyCode() == Settings.getLoadButton()) {
+            if (!wr.getWorld().isPaused()) return;
+
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(wr) != JFileChooser.APPROVE_OPTION) return;
+
+            Camera c = wr.getCamera();
+            wr.getWorld().requestLoad(chooser.getSelectedFile().getPath(),
+                (long) Math.floor(c.xPos / Global.CELL_SIZE), (long) Math.floor(c.yPos / Global.CELL_SIZE));
+        }
+        else if (e.getKeyCode() == Settings.getPasteButton()) {
+            if (!wr.getWorld().isPaused()) return;
+
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(wr) != JFileChooser.APPROVE_OPTION) return;
+
+            Camera c = wr.getCamera();
+            wr.getWorld().requestPaste(chooser.getSelectedFile().getPath(),
+                (long) Math.floor(c.xPos / Global.CELL_SIZE), (long) Math.floor(c.yPos / Global.CELL_SIZE));
+        }
+        else if (e.getKeyCode() == Settings.getHudButton()) {
+            wr.toggleHud();
+        }
+        else if (e.getKeyCode() == Settings.getSaveButton()) {
+            if (!wr.getWorld().isPaused()) return;
+
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(wr) != JFileChooser.APPROVE_OPTION) return;
+
+            wr.getWorld().requestSave(chooser.getSelectedFile().getPath());
         }
     }
 
@@ -0,0 +1,31 @@
+package com.thefattestcat.GameOfLife;
+
+import java.io.IOException;
+
+/* State of a world at one generation, filled by the simulation and only read once published */
+abstract class WorldSnapshot {
+    interface TileVisitor {
+        void tile(long tx, long ty, long[] rows) throws IOException;
+    }
+
+    long generation;
+    long population;
+
+    // cells that may differ from the snapshot the renderer took before this one
+    final long[] changed = new long[4];
+
+    abstract boolean get(long x, long y);
+
+    /* 64 cells from (x, y) to the right, bit i is the cell x + i */
+    long getRow(long x, long y) {
+        long row = 0;
+        for (int i = 0; i < 64; i++) {
+            if (get(x + i, y)) row |= 1L << i;
+        }
+
+        return row;
+    }
+
+    /* Visits every non-empty 64x64 tile, row i of tile (tx, ty) has bit j set for the cell (tx * 64 + j, ty * 64 + i) */
+    abstract void forEachTile(TileVisitor v) throws IOException;
+}